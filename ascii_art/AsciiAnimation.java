@@ -0,0 +1,95 @@
+package ascii_art;
+
+import ascii_art.img_to_char.CharBrightnessTable;
+import ascii_art.img_to_char.FrameDeltaMatcher;
+import image.Image;
+
+import java.io.PrintStream;
+
+
+/**
+ * Plays an animation as ascii art on an ANSI terminal.
+ * After the first frame only the chars that changed are written, each run of changed chars in a
+ * row after a cursor move, so a mostly still animation costs little to match and to print.
+ */
+class AsciiAnimation {
+    // ANSI escape sequences
+    private static final String CLEAR_SCREEN = "\033[2J";
+    private static final String HIDE_CURSOR = "\033[?25l";
+    private static final String SHOW_CURSOR = "\033[?25h";
+    private static final String MOVE_CURSOR_FORMAT = "\033[%d;%dH";
+
+    // Different constants
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final FrameDeltaMatcher matcher;
+    private final PrintStream out;
+    private final long frameNanos;
+
+    /**
+     * Constructor
+     *
+     * @param charsBrightness The brightness of the chars of the font to use
+     * @param charSet         The chars to use
+     * @param charsInRow      chars per row
+     * @param framesPerSecond Maximal frames per second
+     * @param out             The terminal to play on
+     */
+    AsciiAnimation(CharBrightnessTable charsBrightness, Character[] charSet, int charsInRow,
+                   int framesPerSecond, PrintStream out) {
+        this.matcher = new FrameDeltaMatcher(charsBrightness, charsInRow, charSet);
+        this.out = out;
+        this.frameNanos = NANOS_PER_SECOND / framesPerSecond;
+    }
+
+    /**
+     * Play all the frames, waiting between frames to keep the frame rate
+     *
+     * @param frames The frames of the animation
+     * @throws InterruptedException if interrupted while waiting for the next frame
+     */
+    void play(Iterable<Image> frames) throws InterruptedException {
+        this.out.print(CLEAR_SCREEN + HIDE_CURSOR);
+        int rows = 0;
+        try {
+            for (Image frame : frames) {
+                long start = System.nanoTime();
+                char[][] chars = this.matcher.nextFrame(frame);
+                rows = chars.length;
+                printChanges(chars);
+                long left = this.frameNanos - (System.nanoTime() - start);
+                if (0 < left) {
+                    Thread.sleep(left / NANOS_PER_MILLI, (int) (left % NANOS_PER_MILLI));
+                }
+            }
+        } finally {
+            this.out.printf(MOVE_CURSOR_FORMAT, rows + 1, 1);
+            this.out.print(SHOW_CURSOR);
+            this.out.flush();
+        }
+    }
+
+    // Print the runs of changed chars of every row
+    private void printChanges(char[][] chars) {
+        if (this.matcher.changedCells() == 0) {
+            return;
+        }
+        StringBuilder changes = new StringBuilder();
+        for (int y = 0; y < chars.length; y++) {
+            int x = 0;
+            while (x < chars[y].length) {
+                if (!this.matcher.isChanged(y, x)) {
+                    x++;
+                    continue;
+                }
+                int runStart = x;
+                while (x < chars[y].length && this.matcher.isChanged(y, x)) x++;
+                changes.append(String.format(MOVE_CURSOR_FORMAT, y + 1, runStart + 1));
+                changes.append(chars[y], runStart, x - runStart);
+            }
+        }
+        this.out.print(changes);
+        this.out.flush();
+    }
+}
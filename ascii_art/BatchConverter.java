@@ -0,0 +1,273 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharBrightnessTable;
+import ascii_output.AsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+
+/**
+ * Converts many images without user interaction.
+ * Every image passes through a pipeline of stages - decode, brightness, matching and output -
+ * each stage running on its own threads and connected to the next one by a bounded queue,
+ * so a slow stage holds back the ones before it instead of piling up decoded images.
+ * All the images share the same chars brightness table.
+ */
+class BatchConverter {
+    // Output formats
+    static final String FORMAT_HTML = "html";
+    static final String FORMAT_CONSOLE = "console";
+
+    // Messages
+    private static final String DECODE_ERR = "Failed to open image file ";
+    private static final String STATS_FORMAT = "%-10s %6d images %10.1f ms busy %8.1f images/s per thread%n";
+    private static final String TOTAL_FORMAT = "Converted %d of %d images in %.1f ms%n";
+
+    // Different constants
+    private static final String[] STAGE_NAMES = {"decode", "brightness", "matching", "output"};
+    private static final int QUEUE_SLOTS_PER_WORKER = 2;
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final String HTML_EXTENSION = ".html";
+    private static final String FONT_NAME = "Courier New";
+
+    private final List<String> files;
+    private final Character[] charSet;
+    private final int charsInRow;
+    private final String format;
+    private final File outputDir;
+    private final int workers;
+    private final CharBrightnessTable charsBrightness;
+
+    private final AtomicLong[] stageNanos = new AtomicLong[STAGE_NAMES.length];
+    private final AtomicInteger[] stageCounts = new AtomicInteger[STAGE_NAMES.length];
+
+    // An image on its way through the pipeline, and the name of its html file
+    private static class Job {
+        private static final Job END = new Job(null, null);
+
+        private final String filename;
+        private final String outputName;
+        private Image img;
+        private BrightnessImgCharMatcher matcher;
+        private int charsInRow;
+        private char[][] chars;
+
+        private Job(String filename, String outputName) {
+            this.filename = filename;
+            this.outputName = outputName;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param files      The image files to convert
+     * @param charSet    The chars to use
+     * @param charsInRow Wanted chars per row, kept within the limits of each image
+     * @param format     FORMAT_HTML for a file per image in outputDir, FORMAT_CONSOLE to print them
+     * @param outputDir  Directory of the html files
+     * @param workers    Number of threads of each stage
+     */
+    BatchConverter(List<String> files, Character[] charSet, int charsInRow, String format,
+                   String outputDir, int workers) {
+        if (!format.equals(FORMAT_HTML) && !format.equals(FORMAT_CONSOLE)) {
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+        this.files = files;
+        this.charSet = charSet;
+        this.charsInRow = charsInRow;
+        this.format = format;
+        this.outputDir = new File(outputDir);
+        this.workers = workers;
+        this.charsBrightness = new CharBrightnessTable(FONT_NAME);
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            this.stageNanos[i] = new AtomicLong();
+            this.stageCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * List the image files to convert - the files of a directory, sorted, or the file itself
+     *
+     * @param paths files and directories
+     * @return the files
+     */
+    static List<String> listFiles(String[] paths) {
+        List<String> files = new ArrayList<>();
+        for (String path : paths) {
+            File[] children = new File(path).listFiles(File::isFile);
+            if (children == null) {
+                files.add(path);
+                continue;
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                files.add(child.getPath());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Convert all the images and print the throughput of every stage
+     *
+     * @throws InterruptedException if interrupted while waiting for the stages
+     */
+    void run() throws InterruptedException {
+        long start = System.nanoTime();
+        List<BlockingQueue<Job>> queues = new ArrayList<>();
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            queues.add(new ArrayBlockingQueue<>(this.workers * QUEUE_SLOTS_PER_WORKER));
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        threads.addAll(startStage(0, this.workers, queues, this::decode));
+        threads.addAll(startStage(1, this.workers, queues, this::computeBrightness));
+        threads.addAll(startStage(2, this.workers, queues, this::matchChars));
+        // the console is a single stream - printing from several threads would mix the images
+        threads.addAll(startStage(3, this.format.equals(FORMAT_CONSOLE) ? 1 : this.workers, queues,
+                this::write));
+
+        Iterator<String> outputNames = outputNamesOf(this.files).iterator();
+        for (String filename : this.files) {
+            queues.get(0).put(new Job(filename, outputNames.next()));
+        }
+        queues.get(0).put(Job.END);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        printStats(System.nanoTime() - start);
+    }
+
+    // The names of the html files of the images - the image file name, and a number after it when
+    // an image of the same name from another directory came before it
+    private static List<String> outputNamesOf(List<String> files) {
+        Set<String> used = new HashSet<>();
+        List<String> names = new ArrayList<>(files.size());
+        for (String filename : files) {
+            String name = new File(filename).getName(), outputName = name;
+            for (int copy = 2; !used.add(outputName); copy++) {
+                outputName = name + "-" + copy;
+            }
+            names.add(outputName);
+        }
+        return names;
+    }
+
+    // Start the threads of a stage - each takes jobs from the stage queue, works on them and passes
+    // them to the next queue, if there is one. Jobs that failed are dropped. The end mark is passed
+    // on by the last thread of the stage to finish, even one that died of an error, so the stages
+    // after it never wait forever.
+    private List<Thread> startStage(int stage, int threads, List<BlockingQueue<Job>> queues,
+                                    Consumer<Job> work) {
+        BlockingQueue<Job> in = queues.get(stage);
+        BlockingQueue<Job> out = stage + 1 < queues.size() ? queues.get(stage + 1) : null;
+        AtomicInteger running = new AtomicInteger(threads);
+        List<Thread> started = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    Job job;
+                    while ((job = in.take()) != Job.END) {
+                        long start = System.nanoTime();
+                        try {
+                            work.accept(job);
+                        } catch (RuntimeException e) {
+                            Logger.getGlobal().severe(job.filename + ": " + e);
+                            continue;
+                        }
+                        this.stageNanos[stage].addAndGet(System.nanoTime() - start);
+                        this.stageCounts[stage].incrementAndGet();
+                        if (out != null) {
+                            out.put(job);
+                        }
+                    }
+                    in.put(Job.END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (running.decrementAndGet() == 0 && out != null) {
+                        endQueue(out);
+                    }
+                }
+            }, STAGE_NAMES[stage] + "-" + i);
+            thread.start();
+            started.add(thread);
+        }
+        return started;
+    }
+
+    // Put the end mark in a queue, even when interrupted
+    private static void endQueue(BlockingQueue<Job> queue) {
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            try {
+                queue.put(Job.END);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stage 1 - decode the image file
+    private void decode(Job job) {
+        job.img = Image.fromFileNativeSize(job.filename);
+        if (job.img == null) {
+            throw new IllegalArgumentException(DECODE_ERR + job.filename);
+        }
+    }
+
+    // Stage 2 - compute the cells brightness at the resolution allowed for this image
+    private void computeBrightness(Job job) {
+        int minCharsInRow = Math.max(1, (job.img.getWidth() + job.img.getHeight() - 1) / job.img.getHeight());
+        int maxCharsInRow = job.img.getWidth() / MIN_PIXELS_PER_CHAR;
+        job.charsInRow = Math.max(Math.min(this.charsInRow, maxCharsInRow), minCharsInRow);
+        job.matcher = new BrightnessImgCharMatcher(job.img, this.charsBrightness);
+        job.matcher.prepare(job.charsInRow);
+    }
+
+    // Stage 3 - match the chars and let go of the image
+    private void matchChars(Job job) {
+        job.chars = job.matcher.chooseChars(job.charsInRow, this.charSet);
+        job.matcher = null;
+        job.img = null;
+    }
+
+    // Stage 4 - write the ascii art
+    private void write(Job job) {
+        AsciiOutput output = new ConsoleAsciiOutput();
+        if (this.format.equals(FORMAT_HTML)) {
+            output = new HtmlAsciiOutput(new File(this.outputDir, job.outputName + HTML_EXTENSION).getPath(),
+                    FONT_NAME);
+        }
+        output.output(job.chars);
+        job.chars = null;
+    }
+
+    // Print the throughput of every stage, counting only the time its threads were busy
+    private void printStats(long totalNanos) {
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            double busyMillis = this.stageNanos[i].get() / 1e6;
+            int count = this.stageCounts[i].get();
+            System.err.printf(STATS_FORMAT, STAGE_NAMES[i], count, busyMillis,
+                    busyMillis == 0 ? 0 : count * 1000 / busyMillis);
+        }
+        System.err.printf(TOTAL_FORMAT, this.stageCounts[STAGE_NAMES.length - 1].get(),
+                this.files.size(), totalNanos / 1e6);
+    }
+}
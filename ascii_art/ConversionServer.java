@@ -0,0 +1,329 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharBrightnessTable;
+import ascii_output.AsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import image.Image;
+import metrics.CacheKind;
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+
+/**
+ * Converts images sent over HTTP, so that the glyphs brightness is computed once for the life
+ * of the server rather than once per image.
+ * POST /convert?chars=...&width=... with the bytes of an image file as body returns the ascii art
+ * as plain text, rows streamed as they are matched. chars is given as in the add command.
+ * Decoded images and their matchers are kept in an LRU cache keyed by the hash of the image bytes,
+ * so the same image at other widths or chars is not decoded again. The cache is bounded by the
+ * memory of the images and of what their matchers keep - brightness pyramids and ascii art - which
+ * is weighed again after every conversion.
+ * Requests run on a fixed number of threads with a bounded queue - when it is full the thread
+ * accepting connections handles the request itself, which stops it from accepting more until
+ * one is done.
+ */
+class ConversionServer {
+    // Request parameters
+    private static final String CONVERT_PATH = "/convert";
+    private static final String POST_METHOD = "POST";
+    private static final String CHARS_PARAM = "chars";
+    private static final String WIDTH_PARAM = "width";
+    private static final String DEFAULT_CHARS = "0-9";
+    private static final int DEFAULT_CHARS_IN_ROW = 64;
+
+    // HTTP statuses and headers
+    private static final int OK = 200;
+    private static final int BAD_REQUEST = 400;
+    private static final int NOT_FOUND = 404;
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final int PAYLOAD_TOO_LARGE = 413;
+    private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+    private static final int INTERNAL_SERVER_ERROR = 500;
+    private static final int NO_RESPONSE_YET = -1;
+    private static final int CHUNKED = 0;
+    private static final int NO_BODY = -1;
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=UTF-8";
+    private static final String CACHE_HEADER = "X-Cache";
+    private static final String CACHE_HIT = "hit";
+    private static final String CACHE_MISS = "miss";
+
+    // Messages
+    private static final String BAD_PARAMS_ERR = "Bad chars or width\n";
+    private static final String BAD_IMAGE_ERR = "Not an image, or an image too big\n";
+    private static final String TOO_LARGE_ERR = "Image file too large\n";
+    private static final String FAILED_ERR = "Conversion failed\n";
+    private static final String LISTENING_MSG = "Listening on http://%s:%d%s%n";
+
+    // Different constants
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final int QUEUE_SLOTS_PER_WORKER = 4;
+    private static final int MAX_BODY_BYTES = 1 << 26;
+    private static final int BYTES_PER_CACHED_PIXEL = Integer.BYTES;
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String FONT_NAME = "Courier New";
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private final CharBrightnessTable charsBrightness = new CharBrightnessTable(FONT_NAME);
+    private final long maxCacheBytes;
+
+    private final LinkedHashMap<String, CachedImage> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cacheBytes = 0;
+
+    // A decoded image and its matcher, which holds its brightness pyramid and ascii art. Its weight in
+    // the cache is changed only under the lock of the cache.
+    private static class CachedImage {
+        private final String key;
+        private final Image img;
+        private final BrightnessImgCharMatcher matcher;
+        private long bytes;
+
+        private CachedImage(String key, Image img, CharBrightnessTable charsBrightness) {
+            this.key = key;
+            this.img = img;
+            this.matcher = new BrightnessImgCharMatcher(img, charsBrightness);
+            this.bytes = weigh();
+        }
+
+        // The memory of the image pixels and of what the matcher keeps
+        private long weigh() {
+            return (long) this.img.getWidth() * this.img.getHeight() * BYTES_PER_CACHED_PIXEL +
+                    this.matcher.retainedBytes();
+        }
+    }
+
+    /**
+     * Constructor - binds the port but does not serve yet
+     *
+     * @param port          Port to listen on, on the loopback address
+     * @param workers       Number of requests converted at once
+     * @param maxCacheBytes Memory the cached images may take
+     * @throws IOException if the port can not be bound
+     */
+    ConversionServer(int port, int workers, long maxCacheBytes) throws IOException {
+        this.maxCacheBytes = maxCacheBytes;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * QUEUE_SLOTS_PER_WORKER), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    /**
+     * Start serving, requests are handled on other threads
+     */
+    void start() {
+        this.server.start();
+        InetSocketAddress address = this.server.getAddress();
+        System.err.printf(LISTENING_MSG, address.getHostString(), address.getPort(), CONVERT_PATH);
+    }
+
+    /**
+     * @return the port listened on, picked by the system when the port asked for was 0
+     */
+    int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Stop serving, waiting for the requests being handled to finish
+     */
+    void stop() {
+        this.server.stop(0);
+        this.executor.shutdown();
+    }
+
+    // Handle a request, answering an error status to anything but a valid conversion request - and to
+    // a conversion that fails, unless its rows were already being sent
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestURI().getPath().equals(CONVERT_PATH)) {
+                respond(exchange, NOT_FOUND, "");
+                return;
+            }
+            if (!exchange.getRequestMethod().equals(POST_METHOD)) {
+                respond(exchange, METHOD_NOT_ALLOWED, "");
+                return;
+            }
+            Map<String, String> params = paramsOf(exchange.getRequestURI().getRawQuery());
+            Character[] charSet = Shell.charSetOf(params.getOrDefault(CHARS_PARAM, DEFAULT_CHARS));
+            int charsInRow = widthOf(params.getOrDefault(WIDTH_PARAM, String.valueOf(DEFAULT_CHARS_IN_ROW)));
+            if (charSet == null || charsInRow <= 0) {
+                respond(exchange, BAD_REQUEST, BAD_PARAMS_ERR);
+                return;
+            }
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                respond(exchange, PAYLOAD_TOO_LARGE, TOO_LARGE_ERR);
+                return;
+            }
+            String key = hashOf(body);
+            CachedImage cached = cached(key);
+            exchange.getResponseHeaders().set(CACHE_HEADER, cached == null ? CACHE_MISS : CACHE_HIT);
+            if (cached == null) {
+                Image img = Image.fromBytes(body);
+                if (img == null) {
+                    respond(exchange, UNSUPPORTED_MEDIA_TYPE, BAD_IMAGE_ERR);
+                    return;
+                }
+                cached = cache(new CachedImage(key, img, this.charsBrightness));
+            }
+            try {
+                convert(exchange, cached, charsInRow, charSet);
+            } finally {
+                reweigh(cached);
+            }
+        } catch (RuntimeException e) {
+            Logger.getGlobal().severe(CONVERT_PATH + ": " + e);
+            if (exchange.getResponseCode() == NO_RESPONSE_YET) {
+                respond(exchange, INTERNAL_SERVER_ERROR, FAILED_ERR);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Stream the ascii art of a cached image, with the chars per row kept within the limits of the image
+    private void convert(HttpExchange exchange, CachedImage cached, int wantedCharsInRow, Character[] charSet)
+            throws IOException {
+        int minCharsInRow = Math.max(1, (cached.img.getWidth() + cached.img.getHeight() - 1) /
+                cached.img.getHeight());
+        int maxCharsInRow = Math.max(minCharsInRow, cached.img.getWidth() / MIN_PIXELS_PER_CHAR);
+        int charsInRow = Math.max(Math.min(wantedCharsInRow, maxCharsInRow), minCharsInRow);
+
+        exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, TEXT_CONTENT_TYPE);
+        exchange.sendResponseHeaders(OK, CHUNKED);
+        AsciiOutput output = new ConsoleAsciiOutput(new PrintStream(exchange.getResponseBody(), false,
+                StandardCharsets.UTF_8));
+        output.begin();
+        try {
+            // the matcher is shared by all the requests for the same image
+            cached.matcher.chooseChars(charsInRow, charSet, 1, (row, y) -> output.writeRow(row));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            output.end();
+        }
+    }
+
+    // The cached image of a hash, marking it as recently used
+    private CachedImage cached(String key) {
+        synchronized (this.cache) {
+            CachedImage cached = this.cache.get(key);
+            Metrics.cache(CacheKind.IMAGES).count(cached != null);
+            return cached;
+        }
+    }
+
+    // Cache an image, evicting the least recently used images beyond the cache memory. An image
+    // cached meanwhile by another request is kept instead.
+    private CachedImage cache(CachedImage image) {
+        synchronized (this.cache) {
+            CachedImage previous = this.cache.putIfAbsent(image.key, image);
+            if (previous != null) {
+                return previous;
+            }
+            this.cacheBytes += image.bytes;
+            evict();
+            return image;
+        }
+    }
+
+    // Weigh a cached image again once its matcher kept more, or less, evicting the least recently
+    // used images beyond the cache memory. An image evicted meanwhile is left out.
+    private void reweigh(CachedImage image) {
+        long bytes = image.weigh();
+        synchronized (this.cache) {
+            if (this.cache.get(image.key) != image) {
+                return;
+            }
+            this.cacheBytes += bytes - image.bytes;
+            image.bytes = bytes;
+            evict();
+        }
+    }
+
+    // Evict the least recently used images until the rest fit in the cache memory, keeping at least
+    // the most recent one. Called with the lock of the cache.
+    private void evict() {
+        Iterator<CachedImage> eldest = this.cache.values().iterator();
+        while (this.cacheBytes > this.maxCacheBytes && 1 < this.cache.size()) {
+            this.cacheBytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    // Answer a status with a short text
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, TEXT_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length == 0 ? NO_BODY : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // The chars in a row asked for, 0 when it is not a positive number
+    private static int widthOf(String width) {
+        try {
+            return Math.max(0, Integer.parseInt(width));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Read the whole request body, null if it is longer than allowed
+    private static byte[] readBody(InputStream in) throws IOException {
+        byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+        return body.length > MAX_BODY_BYTES ? null : body;
+    }
+
+    // The parameters of a query string
+    private static Map<String, String> paramsOf(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            int eq = param.indexOf('=');
+            if (0 < eq) {
+                params.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    // Hex digest of the image bytes
+    private static String hashOf(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance(HASH_ALGORITHM).digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
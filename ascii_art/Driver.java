@@ -1,20 +1,136 @@
 package ascii_art;
 
+import ascii_art.img_to_char.CharBrightnessTable;
+import ascii_art.img_to_char.CharRenderer;
+import image.FrameSequence;
 import image.Image;
+import metrics.Metrics;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 
 public class Driver {
+    private static final String GLYPH_CACHE_PROPERTY = "ascii_art.glyphCache";
+
+    private static final String BATCH_FLAG = "--batch";
+    private static final int BATCH_FIXED_ARGS = 5;
+    private static final String BATCH_USAGE =
+            "USAGE: java asciiArt --batch <chars> <charsInRow> <html|console> <outputDir> <image|dir>...";
+    private static final String ANIMATE_FLAG = "--animate";
+    private static final int ANIMATE_ARGS = 5;
+    private static final String ANIMATE_USAGE =
+            "USAGE: java asciiArt --animate <chars> <charsInRow> <framesPerSecond> <animation|dir>";
+    private static final String SERVE_FLAG = "--serve";
+    private static final String SERVE_USAGE = "USAGE: java asciiArt --serve <port> [cacheMegabytes]";
+    private static final long DEFAULT_CACHE_MEGABYTES = 256;
+    private static final long BYTES_PER_MEGABYTE = 1 << 20;
+    private static final String FONT_NAME = "Courier New";
+
     public static void main(String[] args) throws Exception {
+        Metrics.registerMBeans();
+        if (0 < args.length && args[0].equals(BATCH_FLAG)) {
+            runBatch(args);
+            return;
+        }
+        if (0 < args.length && args[0].equals(ANIMATE_FLAG)) {
+            runAnimation(args);
+            return;
+        }
+        if (0 < args.length && args[0].equals(SERVE_FLAG)) {
+            runServer(args);
+            return;
+        }
         if (args.length != 1) {
             System.err.println("USAGE: java asciiArt ");
+            System.err.println(BATCH_USAGE);
+            System.err.println(ANIMATE_USAGE);
+            System.err.println(SERVE_USAGE);
             return;
         }
-        Image img = Image.fromFile(args[0]);
+        Image img = Image.fromFileNativeSize(args[0]);
         if (img == null) {
             Logger.getGlobal().severe("Failed to open image file " + args[0]);
             return;
         }
+        String glyphCache = loadGlyphCache();
         new Shell(img).run();
+        saveGlyphCache(glyphCache);
+    }
+
+    // Convert all the given images without the interactive shell, chars are given as in the add command
+    private static void runBatch(String[] args) throws InterruptedException {
+        Character[] charSet = 1 < args.length ? Shell.charSetOf(args[1]) : null;
+        if (args.length <= BATCH_FIXED_ARGS || charSet == null || !args[2].matches("\\d+")) {
+            System.err.println(BATCH_USAGE);
+            return;
+        }
+        List<String> files = BatchConverter.listFiles(Arrays.copyOfRange(args, BATCH_FIXED_ARGS, args.length));
+        String glyphCache = loadGlyphCache();
+        new BatchConverter(files, charSet, Integer.parseInt(args[2]), args[3], args[4],
+                Runtime.getRuntime().availableProcessors()).run();
+        saveGlyphCache(glyphCache);
+    }
+
+    // Play an animated image or a directory of frames on the terminal
+    private static void runAnimation(String[] args) throws InterruptedException {
+        Character[] charSet = 1 < args.length ? Shell.charSetOf(args[1]) : null;
+        if (args.length != ANIMATE_ARGS || charSet == null || !args[2].matches("\\d+") ||
+                !args[3].matches("[1-9]\\d*")) {
+            System.err.println(ANIMATE_USAGE);
+            return;
+        }
+        String glyphCache = loadGlyphCache();
+        try (FrameSequence frames = Image.framesOf(args[4])) {
+            new AsciiAnimation(new CharBrightnessTable(FONT_NAME), charSet, Integer.parseInt(args[2]),
+                    Integer.parseInt(args[3]), System.out).play(frames);
+        }
+        saveGlyphCache(glyphCache);
+    }
+
+    // Serve conversions over HTTP until the process is stopped
+    private static void runServer(String[] args) throws IOException {
+        if (args.length < 2 || 3 < args.length || !args[1].matches("\\d{1,5}") ||
+                (args.length == 3 && !args[2].matches("[1-9]\\d{0,6}"))) {
+            System.err.println(SERVE_USAGE);
+            return;
+        }
+        long cacheMegabytes = args.length == 3 ? Long.parseLong(args[2]) : DEFAULT_CACHE_MEGABYTES;
+        String glyphCache = loadGlyphCache();
+        ConversionServer server = new ConversionServer(Integer.parseInt(args[1]),
+                Runtime.getRuntime().availableProcessors(), cacheMegabytes * BYTES_PER_MEGABYTE);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            saveGlyphCache(glyphCache);
+        }));
+        server.start();
+    }
+
+    // Load the glyph cache file named by the ascii_art.glyphCache property, if it exists, and return
+    // its name - null when the property is not set
+    private static String loadGlyphCache() {
+        String glyphCache = System.getProperty(GLYPH_CACHE_PROPERTY);
+        if (glyphCache != null && new File(glyphCache).exists()) {
+            try {
+                CharRenderer.loadCache(glyphCache);
+            } catch (IOException e) {
+                Logger.getGlobal().severe("Failed to load glyph cache " + glyphCache + ": " + e.getMessage());
+            }
+        }
+        return glyphCache;
+    }
+
+    // Save the glyphs drawn so far into the glyph cache file, if there is one
+    private static void saveGlyphCache(String glyphCache) {
+        if (glyphCache == null) {
+            return;
+        }
+        try {
+            CharRenderer.saveCache(glyphCache);
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to save glyph cache " + glyphCache + ": " + e.getMessage());
+        }
     }
 }
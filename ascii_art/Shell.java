@@ -1,12 +1,22 @@
 package ascii_art;
 
 import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharBrightnessTable;
+import ascii_art.img_to_char.Dithering;
+import ascii_art.img_to_char.ImgCharMatcher;
+import ascii_art.img_to_char.ShapeImgCharMatcher;
+import ascii_output.AnsiColorAsciiOutput;
 import ascii_output.AsciiOutput;
+import ascii_output.ColoredAsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
+import ascii_output.HtmlColorAsciiOutput;
 import image.Image;
+import metrics.Metrics;
 
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.logging.Logger;
 import java.util.stream.Stream;
 
 
@@ -26,6 +36,15 @@ public class Shell {
     private static final String CMD_CONSOLE = "console";
     private static final String CMD_RENDER = "render";
     private static final String CMD_REMOVE_CHARS = "remove";
+    private static final String CMD_COLOR = "color";
+    private static final String CMD_STATS = "stats";
+    private static final String CMD_MATCH = "match";
+    private static final String MATCH_BRIGHTNESS = "brightness";
+    private static final String MATCH_SHAPE = "shape";
+    private static final String CMD_DITHER = "dither";
+    private static final String DITHER_NONE = "none";
+    private static final String DITHER_DIFFUSION = "diffusion";
+    private static final String DITHER_ORDERED = "ordered";
 
     // Messages
     private static final String FORMAT_ADD_ERR = "Did not add due to incorrect format";
@@ -33,11 +52,17 @@ public class Shell {
     private static final String INCORRECT_CMD_ERR = "Did not executed due to incorrect command";
     private static final String RES_SET_MSG = "Width set to ";
     private static final String RES_NOT_UPDATED_MSG = "Did not change due to exceeding boundaries";
+    private static final String COLOR_ON_MSG = "Colored output";
+    private static final String COLOR_OFF_MSG = "Uncolored output";
+    private static final String RENDER_ERR = "Failed to render: ";
+    private static final String MATCH_SET_MSG = "Matching chars by ";
+    private static final String DITHER_SET_MSG = "Dithering: ";
 
     // Different constants
     private static final int ASCII_FIRST_CHAR = 32;
     private static final int ASCII_END_CHAR = 126;
     private static final String DEF_INIT_CHARS = "0-9";
+    private static final String CHAR_RANGE_FORMAT = "^[!-~][-][!-~]|[!-~]";
     private static final int MIN_PIXELS_PER_CHAR = 2;
     private static final int INITIAL_CHARS_IN_ROW = 64;
     private static final String FONT_NAME = "Courier New";
@@ -46,8 +71,13 @@ public class Shell {
     private final int minCharsInRow;
     private final int maxCharsInRow;
     private int charsInRow;
-    private final BrightnessImgCharMatcher charMatcher;
+    private final Image img;
+    private final CharBrightnessTable charsBrightness;
+    private ImgCharMatcher charMatcher;
     private AsciiOutput output;
+    private ColoredAsciiOutput coloredOutput;
+    private boolean colored = false;
+    private Dithering dithering = Dithering.NONE;
 
     private final Set<String> cmdSet = new HashSet<>();
     private final Set<Character> charSet = new HashSet<>();
@@ -59,13 +89,18 @@ public class Shell {
      */
     public Shell(Image img) {
         Collections.addAll(this.cmdSet, CMD_EXIT, CMD_CHARS_PRINT, CMD_REMOVE_CHARS,
-                CMD_ADD_CHARS, CMD_RES, CMD_CONSOLE, CMD_RENDER);
+                CMD_ADD_CHARS, CMD_RES, CMD_CONSOLE, CMD_RENDER, CMD_COLOR, CMD_STATS, CMD_MATCH,
+                CMD_DITHER);
         addRemoveChars(DEF_INIT_CHARS, CMD_ADD_CHARS);
-        this.minCharsInRow = Math.max(1, img.getWidth() / img.getHeight());
+        this.minCharsInRow = Math.max(1, (img.getWidth() + img.getHeight() - 1) / img.getHeight());
         this.maxCharsInRow = img.getWidth() / MIN_PIXELS_PER_CHAR;
         this.charsInRow = Math.max(Math.min(INITIAL_CHARS_IN_ROW, maxCharsInRow), minCharsInRow);
-        this.charMatcher = new BrightnessImgCharMatcher(img, FONT_NAME);
+        this.img = img;
+        this.charsBrightness = new CharBrightnessTable(FONT_NAME);
+        this.charMatcher = new BrightnessImgCharMatcher(img, this.charsBrightness);
+        this.charMatcher.setWorkers(Runtime.getRuntime().availableProcessors());
         this.output = new HtmlAsciiOutput(OUTPUT_FILENAME, FONT_NAME);
+        this.coloredOutput = new HtmlColorAsciiOutput(OUTPUT_FILENAME, FONT_NAME);
     }
 
     /**
@@ -77,8 +112,14 @@ public class Shell {
      * / space char
      * remove - Syntax is same as add - this given chars.
      * chars - prints the chars that been chosen
-     * res up/ res down - makes res higher/lower
+     * res up/ res down/ res n - makes res higher/lower, or sets it to n chars in a row
      * console - Change the render to output console
+     * color - Switch between colored and uncolored render, colored chars take the mean color of their cell
+     * stats - prints the timings of every stage of rendering and the hit rates of the caches
+     * match brightness/ match shape - match chars to cells by their brightness, or by the brightness of
+     * their parts which follows edges
+     * dither none/ dither diffusion/ dither ordered - make up for the brightness lost to matching cells,
+     * by spreading it to the next cells or by a fixed pattern, so gradients do not turn into bands
      * render - rendering the image as ascii art
      */
     public void run() {
@@ -112,6 +153,18 @@ public class Shell {
                 case CMD_RENDER:
                     render();
                     break;
+                case CMD_COLOR:
+                    switchColor();
+                    break;
+                case CMD_STATS:
+                    System.out.print(Metrics.report());
+                    break;
+                case CMD_MATCH:
+                    changeMatching(words[1]);
+                    break;
+                case CMD_DITHER:
+                    changeDithering(words[1]);
+                    break;
                 case CMD_EXIT:
                     return;
             }
@@ -121,6 +174,33 @@ public class Shell {
     // Change the way of output from html to console
     private void changeOutputToConsole() {
         this.output = new ConsoleAsciiOutput();
+        this.coloredOutput = new AnsiColorAsciiOutput();
+    }
+
+    // Switch between colored and uncolored output
+    private void switchColor() {
+        this.colored = !this.colored;
+        this.charMatcher.setColored(this.colored);
+        System.out.println(this.colored ? COLOR_ON_MSG : COLOR_OFF_MSG);
+    }
+
+    // Change the way chars are matched to cells, keeping the color and workers settings
+    private void changeMatching(String param) {
+        this.charMatcher.release();
+        this.charMatcher = param.equals(MATCH_SHAPE) ? new ShapeImgCharMatcher(this.img, this.charsBrightness) :
+                new BrightnessImgCharMatcher(this.img, this.charsBrightness);
+        this.charMatcher.setWorkers(Runtime.getRuntime().availableProcessors());
+        this.charMatcher.setColored(this.colored);
+        this.charMatcher.setDithering(this.dithering);
+        System.out.println(MATCH_SET_MSG + param);
+    }
+
+    // Change how the brightness lost to matching cells is made up for
+    private void changeDithering(String param) {
+        this.dithering = param.equals(DITHER_DIFFUSION) ? Dithering.DIFFUSION :
+                param.equals(DITHER_ORDERED) ? Dithering.ORDERED : Dithering.NONE;
+        this.charMatcher.setDithering(this.dithering);
+        System.out.println(DITHER_SET_MSG + param);
     }
 
     // Checks input is valid - this function takes care of different case hence a lot of not nice if's
@@ -130,21 +210,29 @@ public class Shell {
         }
 
         if (words[0].equals(CMD_ADD_CHARS) || words[0].equals(CMD_REMOVE_CHARS)) {
-            return ((words.length == 1) || (words.length > 2)) || !words[1].equals(CMD_ADD_ALL) &&
-                    !words[1].equals(CMD_ADD_SPACE) && !words[1].matches("^[!-~][-][!-~]|[!-~]");
+            return ((words.length == 1) || (words.length > 2)) || !isCharRange(words[1]);
         }
 
         if (words[0].equals(CMD_EXIT) && 1 < words.length) {
             words[0] = " ";
             return true;
         }
-        if (words[0].equals(CMD_CHARS_PRINT)) {
+        if (words[0].equals(CMD_CHARS_PRINT) || words[0].equals(CMD_COLOR) || words[0].equals(CMD_STATS)) {
             return 1 < words.length;
         }
 
+        if (words[0].equals(CMD_MATCH)) {
+            return words.length != 2 || (!words[1].equals(MATCH_BRIGHTNESS) && !words[1].equals(MATCH_SHAPE));
+        }
+
+        if (words[0].equals(CMD_DITHER)) {
+            return words.length != 2 || (!words[1].equals(DITHER_NONE) && !words[1].equals(DITHER_DIFFUSION) &&
+                    !words[1].equals(DITHER_ORDERED));
+        }
+
         if (words[0].equals(CMD_RES)) {
             return (2 < words.length || words.length == 1) ||
-                    (!words[1].equals(RES_UP_CMD) && !words[1].equals(RES_DOWN_CMD));
+                    (!words[1].equals(RES_UP_CMD) && !words[1].equals(RES_DOWN_CMD) && !words[1].matches("\\d{1,9}"));
         }
         return false;
     }
@@ -182,9 +270,24 @@ public class Shell {
         }
     }
 
+    // The chars of a parameter of the add command, null if it is not of its format
+    static Character[] charSetOf(String param) {
+        if (!isCharRange(param)) {
+            return null;
+        }
+        char[] range = parseCharRange(param);
+        return Stream.iterate(range[0], c -> c <= range[1], c -> (char) ((int) c + 1))
+                .toArray(Character[]::new);
+    }
+
+    // Whether a parameter of the add and remove commands is of their format
+    private static boolean isCharRange(String param) {
+        return param.equals(CMD_ADD_ALL) || param.equals(CMD_ADD_SPACE) || param.matches(CHAR_RANGE_FORMAT);
+    }
+
     // Get the user parameter of which chars to add and remove and return an array
     // of their range.  i.e. for param "z-a" will return: {'a','z'}
-    private char[] parseCharRange(String param) {
+    private static char[] parseCharRange(String param) {
         if (param.equals(CMD_ADD_SPACE)) {
             return new char[]{' ', ' '};
         }
@@ -200,30 +303,56 @@ public class Shell {
         return new char[]{param.charAt(0), param.charAt(2)};
     }
 
-    // Change the resolution of image to ascii
+    // Change the resolution of image to ascii - up/down double/halve it within the boundaries, a number
+    // sets it exactly
     private void resChange(String param) {
         if (param.equals(RES_UP_CMD)) {
             if (this.charsInRow == this.maxCharsInRow) {
                 System.out.println(RES_NOT_UPDATED_MSG);
                 return;
             }
-            this.charsInRow = 2 * this.charsInRow;
-        }
-        if (param.equals(RES_DOWN_CMD)) {
+            this.charsInRow = Math.min(2 * this.charsInRow, this.maxCharsInRow);
+        } else if (param.equals(RES_DOWN_CMD)) {
             if (this.charsInRow == this.minCharsInRow) {
                 System.out.println(RES_NOT_UPDATED_MSG);
                 return;
             }
-            this.charsInRow = this.charsInRow / 2;
+            this.charsInRow = Math.max(this.charsInRow / 2, this.minCharsInRow);
+        } else {
+            int wantedCharsInRow = Integer.parseInt(param);
+            if (wantedCharsInRow < this.minCharsInRow || this.maxCharsInRow < wantedCharsInRow) {
+                System.out.println(RES_NOT_UPDATED_MSG);
+                return;
+            }
+            this.charsInRow = wantedCharsInRow;
         }
         System.out.println(RES_SET_MSG + this.charsInRow);
     }
 
-    // Render the output
+    // Render the output - every row is written as soon as it is matched
     private void render() {
         Character[] charSetArr = charSet.toArray(new Character[0]);
-        char[][] chars = this.charMatcher.chooseChars(this.charsInRow, charSetArr);
-        this.output.output(chars);
+        try {
+            if (this.colored) {
+                int[][] colors = this.charMatcher.chooseColors(this.charsInRow);
+                this.coloredOutput.begin();
+                try {
+                    this.charMatcher.chooseChars(this.charsInRow, charSetArr, 1,
+                            (row, y) -> this.coloredOutput.writeRow(row, colors[y]));
+                } finally {
+                    this.coloredOutput.end();
+                }
+                return;
+            }
+            this.output.begin();
+            try {
+                this.charMatcher.chooseChars(this.charsInRow, charSetArr, 1, (row, y) -> this.output.writeRow(row));
+            } finally {
+                this.output.end();
+            }
+        } catch (UncheckedIOException e) {
+            Logger.getGlobal().severe(RENDER_ERR + e.getCause().getMessage());
+        }
     }
 }
 
@@ -0,0 +1,160 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+import java.util.Arrays;
+
+/**
+ * Summed-area table (integral image) of the grey level of an image.
+ * Built once in a single pass over the pixels, after which the mean brightness of
+ * any rectangle of the image costs four lookups. Tables of the red, green and blue levels
+ * can be built in the same pass, giving the mean color of any rectangle as well.
+ */
+class BrightnessIntegral {
+    private static final int CHANNELS = 3;
+
+    private final double[] table;
+    private final double[][] colorTables;
+    private final int stride;
+    private final int width;
+    private final int height;
+
+    /**
+     * Constructor - scans the whole image once
+     *
+     * @param img The image to index
+     */
+    BrightnessIntegral(Image img) {
+        this(img, false);
+    }
+
+    /**
+     * Constructor - scans the whole image once
+     *
+     * @param img       The image to index
+     * @param withColor Whether to index the color channels too, which takes four times the memory
+     */
+    BrightnessIntegral(Image img, boolean withColor) {
+        int width = img.getWidth(), height = img.getHeight();
+        this.width = width;
+        this.height = height;
+        this.stride = width + 1;
+        this.table = new double[this.stride * (height + 1)];
+        this.colorTables = withColor ? new double[CHANNELS][this.stride * (height + 1)] : null;
+
+        int[] rgbRow = new int[width];
+        double[] greyRow = new double[width];
+        double[] colorSums = new double[CHANNELS];
+        for (int y = 0; y < height; y++) {
+            double rowSum = 0;
+            int row = (y + 1) * this.stride, prevRow = y * this.stride;
+            img.getRgbRow(0, y, width, rgbRow, 0);
+            GreyLevels.INSTANCE.greyLevelsOf(rgbRow, 0, width, greyRow);
+            for (int x = 0; x < width; x++) {
+                rowSum += greyRow[x];
+                this.table[row + x + 1] = this.table[prevRow + x + 1] + rowSum;
+            }
+            if (this.colorTables == null) {
+                continue;
+            }
+            Arrays.fill(colorSums, 0);
+            for (int x = 0; x < width; x++) {
+                for (int c = 0; c < CHANNELS; c++) {
+                    colorSums[c] += channelOf(rgbRow[x], c);
+                    this.colorTables[c][row + x + 1] = this.colorTables[c][prevRow + x + 1] + colorSums[c];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return bytes taken by the tables
+     */
+    long bytes() {
+        return (long) this.table.length * Double.BYTES * (this.colorTables == null ? 1 : 1 + CHANNELS);
+    }
+
+    /**
+     * @return whether the mean color of rectangles can be asked for
+     */
+    boolean hasColor() {
+        return this.colorTables != null;
+    }
+
+    /**
+     * Mean brightness of a rectangle of the image
+     *
+     * @param x      left coordinate
+     * @param y      top coordinate
+     * @param width  rectangle width in pixels
+     * @param height rectangle height in pixels
+     * @return brightness between 0 (black) and 1 (white)
+     */
+    float brightnessOf(int x, int y, int width, int height) {
+        int top = y * this.stride, bottom = (y + height) * this.stride;
+        double sum = this.table[bottom + x + width] - this.table[bottom + x] -
+                this.table[top + x + width] + this.table[top + x];
+        return (float) (sum / ((double) width * height * BrightnessImgCharMatcher.MAX_COLOR));
+    }
+
+    /**
+     * Mean brightness of a rectangle of the image whose edges need not be on whole pixels -
+     * pixels on the edges count by the share of them inside the rectangle
+     *
+     * @param x      left coordinate
+     * @param y      top coordinate
+     * @param width  rectangle width in pixels
+     * @param height rectangle height in pixels
+     * @return brightness between 0 (black) and 1 (white)
+     */
+    float brightnessOf(double x, double y, double width, double height) {
+        double sum = areaSum(x + width, y + height) - areaSum(x, y + height) -
+                areaSum(x + width, y) + areaSum(x, y);
+        return (float) (sum / (width * height * BrightnessImgCharMatcher.MAX_COLOR));
+    }
+
+    /**
+     * Mean color of a rectangle of the image whose edges need not be on whole pixels, the image
+     * must have been indexed with its color
+     *
+     * @param x      left coordinate
+     * @param y      top coordinate
+     * @param width  rectangle width in pixels
+     * @param height rectangle height in pixels
+     * @return packed RGB of the mean color
+     */
+    int colorOf(double x, double y, double width, double height) {
+        int rgb = 0;
+        for (double[] colorTable : this.colorTables) {
+            double sum = areaSum(colorTable, x + width, y + height) - areaSum(colorTable, x, y + height) -
+                    areaSum(colorTable, x + width, y) + areaSum(colorTable, x, y);
+            int level = (int) Math.round(sum / (width * height));
+            rgb = (rgb << Byte.SIZE) | Math.max(0, Math.min(BrightnessImgCharMatcher.MAX_COLOR, level));
+        }
+        return rgb;
+    }
+
+    // Level of a color channel of a packed ARGB pixel - 0 for red, 1 for green and 2 for blue
+    private static int channelOf(int rgb, int channel) {
+        return (rgb >> (Byte.SIZE * (CHANNELS - 1 - channel))) & BrightnessImgCharMatcher.MAX_COLOR;
+    }
+
+    // Sum of the grey levels above and left of (x, y)
+    private double areaSum(double x, double y) {
+        return areaSum(this.table, x, y);
+    }
+
+    // Sum of a table above and left of (x, y) - bilinear interpolation of the table, which is
+    // exact since the image is constant over each pixel
+    private double areaSum(double[] table, double x, double y) {
+        x = Math.max(0, Math.min(this.width, x));
+        y = Math.max(0, Math.min(this.height, y));
+        int left = Math.min((int) x, this.width - 1), top = Math.min((int) y, this.height - 1);
+        double fracX = x - left, fracY = y - top;
+        int topRow = top * this.stride, bottomRow = topRow + this.stride;
+        return table[topRow + left] * (1 - fracX) * (1 - fracY) +
+                table[topRow + left + 1] * fracX * (1 - fracY) +
+                table[bottomRow + left] * (1 - fracX) * fracY +
+                table[bottomRow + left + 1] * fracX * fracY;
+    }
+}
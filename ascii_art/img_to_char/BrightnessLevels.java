@@ -0,0 +1,32 @@
+package ascii_art.img_to_char;
+
+/**
+ * A char set compiled for matching, whose chars have their brightness stretched to [0, 1] - the
+ * levels of brightness cells are matched to, and that dithering spreads the error of.
+ */
+interface BrightnessLevels {
+    /**
+     * @return number of distinct brightness levels of the chars, 0 if the set is empty
+     */
+    int levels();
+
+    /**
+     * @param ch a char of the set
+     * @return the stretched brightness of the char, between 0 and 1
+     */
+    float brightnessOf(char ch);
+
+    /**
+     * @param brightness a brightness between 0 and 1
+     * @return the highest level at or below the brightness, the lowest level when there is none,
+     * the brightness itself if the set is empty
+     */
+    float levelBelow(float brightness);
+
+    /**
+     * @param brightness a brightness between 0 and 1
+     * @return the lowest level above the brightness, the highest level when there is none, the
+     * brightness itself if the set is empty
+     */
+    float levelAbove(float brightness);
+}
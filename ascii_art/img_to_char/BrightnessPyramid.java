@@ -0,0 +1,440 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mipmap-like pyramid of the cells brightness of an image.
+ * Level k holds, row after row, the mean brightness of every square cell of 2^k pixels.
+ * Levels are built lazily: a level is reduced 2x2 from the nearest finer level already built,
+ * and only when there is none it is read from the integral image. Images too big for an integral
+ * image are instead scanned once row after row, which suits images streamed from disk.
+ * Since every level is a quarter of the one below it, the levels never take more than 4/3 of the
+ * finest one, which is one float per cell of the finest resolution asked for. The integral image
+ * is bigger - a double per pixel, and three more when colored - and is kept until release, so that
+ * grids of other sizes and the colors of cells are read without another pass over the image.
+ * Cells of other sizes, including fractions of pixels, are resampled on demand and kept by grid,
+ * until the kept grids add up to as many cells as the image has pixels. A coarser grid whose cells
+ * are whole blocks of the cells of the finest grid resampled so far is reduced from it, in a pass
+ * over its cells instead of over the image.
+ * When colored, the mean color of the cells is read along with their brightness - from the color
+ * tables of the same integral image, or in the same scan of the rows.
+ * The pyramid is shared by all the threads of a matcher. Kept grids are looked up without locks and
+ * grids are resampled outside of them; only what reads the image - building the integral image or a
+ * level, and scanning the rows - takes turns. The arrays it hands out are never changed afterwards
+ * and may be read by any thread.
+ */
+class BrightnessPyramid {
+    private static final long MAX_INTEGRAL_PIXELS = 1L << 24;
+    private static final int COLORED_INTEGRAL_TABLES = 4;
+    private static final double BLOCK_TOLERANCE = 1e-9;
+
+    private final Image img;
+    private final float[][] levels = new float[Integer.SIZE][];
+    private BrightnessIntegral integral = null;
+    private volatile boolean colored = false;
+
+    // The kept grids of cells brightness and colors, and how many cells they add up to
+    private final ConcurrentHashMap<String, float[]> cells = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, int[]> colors = new ConcurrentHashMap<>();
+    private final AtomicLong keptCells = new AtomicLong();
+
+    // The finest grid resampled so far
+    private volatile FineGrid finest = null;
+
+    // A grid resampled from the integral image or the rows, whether it was scanned, and its cells
+    private static final class FineGrid {
+        private final int cols, rows;
+        private final double cellWidth, cellHeight;
+        private final boolean scanned;
+        private final float[] cells;
+
+        private FineGrid(int cols, int rows, double cellWidth, double cellHeight, boolean scanned, float[] cells) {
+            this.cols = cols;
+            this.rows = rows;
+            this.cellWidth = cellWidth;
+            this.cellHeight = cellHeight;
+            this.scanned = scanned;
+            this.cells = cells;
+        }
+    }
+
+    /**
+     * Constructor - does not scan the image yet
+     *
+     * @param img The image to build the pyramid of
+     */
+    BrightnessPyramid(Image img) {
+        this.img = img;
+    }
+
+    /**
+     * Brightness of all the cells of the given size
+     *
+     * @param pixels cell size, a power of 2
+     * @return the cells brightness, row after row, (width / pixels) cells in a row
+     */
+    synchronized float[] levelOf(int pixels) {
+        if (pixels <= 0 || Integer.bitCount(pixels) != 1) {
+            throw new IllegalArgumentException();
+        }
+        int level = Integer.numberOfTrailingZeros(pixels);
+        if (this.levels[level] != null) {
+            return this.levels[level];
+        }
+
+        int finer = level - 1;
+        while (0 <= finer && this.levels[finer] == null) finer--;
+        if (finer < 0) {
+            this.levels[level] = fromImage(pixels);
+            return this.levels[level];
+        }
+        for (int k = finer + 1; k <= level; k++) {
+            this.levels[k] = reduce(this.levels[k - 1], 1 << (k - 1));
+        }
+        return this.levels[level];
+    }
+
+    /**
+     * Brightness of a grid of cells of any size, not necessarily whole pixels. Square cells of a
+     * power of 2 pixels come from the pyramid levels; other cells are resampled from the integral
+     * image, pixels on the cell edges counting by the share of them inside the cell.
+     *
+     * @param cols       cells in a row
+     * @param rows       rows of cells
+     * @param cellWidth  cell width in pixels
+     * @param cellHeight cell height in pixels
+     * @return the cells brightness, row after row
+     */
+    float[] cellsOf(int cols, int rows, double cellWidth, double cellHeight) {
+        StageTimer timer = Metrics.start(Stage.BRIGHTNESS);
+        float[] cells = resample(cols, rows, cellWidth, cellHeight);
+        timer.stop(cells.length);
+        return cells;
+    }
+
+    /**
+     * Mean color of a grid of cells, the same cells as cellsOf. Costs no pass over the image when
+     * the pyramid was colored before the brightness of the grid was read.
+     *
+     * @param cols       cells in a row
+     * @param rows       rows of cells
+     * @param cellWidth  cell width in pixels
+     * @param cellHeight cell height in pixels
+     * @return the cells packed RGB, row after row
+     */
+    int[] colorsOf(int cols, int rows, double cellWidth, double cellHeight) {
+        setColored(true);
+        String grid = gridKeyOf(cols, rows, cellWidth, cellHeight);
+        int[] colors = this.colors.get(grid);
+        if (colors != null) {
+            return colors;
+        }
+        if (isTooBigForIntegral()) {
+            return scanColors(grid, cols, rows, cellWidth, cellHeight);
+        }
+        BrightnessIntegral integral = integral();
+        colors = new int[cols * rows];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                colors[y * cols + x] = integral.colorOf(x * cellWidth, y * cellHeight, cellWidth, cellHeight);
+            }
+        }
+        return keep(this.colors, grid, colors, colors.length);
+    }
+
+    /**
+     * Set whether the cells color is read along with their brightness. An integral image built
+     * without color is dropped when turning color on.
+     *
+     * @param colored whether to keep the cells color
+     */
+    synchronized void setColored(boolean colored) {
+        this.colored = colored;
+        if (colored && this.integral != null && !this.integral.hasColor()) {
+            this.integral = null;
+        }
+    }
+
+    /**
+     * Memory kept by the pyramid - its levels, kept grids and integral image
+     *
+     * @return the bytes kept
+     */
+    synchronized long retainedBytes() {
+        // kept grids of brightness and of colors both take 4 bytes a cell
+        long bytes = this.keptCells.get() * Float.BYTES;
+        for (float[] level : this.levels) {
+            if (level != null) {
+                bytes += (long) level.length * Float.BYTES;
+            }
+        }
+        return this.integral == null ? bytes : bytes + this.integral.bytes();
+    }
+
+    /**
+     * Release all the levels, kept grids and the integral image, they are rebuilt on demand
+     */
+    synchronized void release() {
+        Arrays.fill(this.levels, null);
+        this.integral = null;
+        this.cells.clear();
+        this.colors.clear();
+        this.keptCells.set(0);
+        this.finest = null;
+    }
+
+    // Brightness of a grid of cells from a pyramid level, the kept grids, the finest grid so far, the
+    // integral image or the image rows
+    private float[] resample(int cols, int rows, double cellWidth, double cellHeight) {
+        int pixels = (int) cellWidth;
+        if (cellWidth == pixels && cellHeight == pixels && Integer.bitCount(pixels) == 1 &&
+                cols == this.img.getWidth() / pixels && rows == this.img.getHeight() / pixels) {
+            return levelOf(pixels);
+        }
+        String grid = gridKeyOf(cols, rows, cellWidth, cellHeight);
+        float[] cells = this.cells.get(grid);
+        if (cells != null) {
+            return cells;
+        }
+        cells = fromFinestGrid(cols, rows, cellWidth, cellHeight);
+        if (cells != null) {
+            return keep(this.cells, grid, cells, cells.length);
+        }
+        boolean scanned = isTooBigForIntegral();
+        if (scanned) {
+            cells = scanCells(grid, cols, rows, cellWidth, cellHeight);
+        } else {
+            BrightnessIntegral integral = integral();
+            cells = new float[cols * rows];
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    cells[y * cols + x] = integral.brightnessOf(x * cellWidth, y * cellHeight, cellWidth, cellHeight);
+                }
+            }
+            cells = keep(this.cells, grid, cells, cells.length);
+        }
+        keepIfFinest(new FineGrid(cols, rows, cellWidth, cellHeight, scanned, cells));
+        return cells;
+    }
+
+    // The key of a grid in the kept grids
+    private static String gridKeyOf(int cols, int rows, double cellWidth, double cellHeight) {
+        return cols + "x" + rows + ":" + cellWidth + "x" + cellHeight;
+    }
+
+    // Keep a grid unless another thread kept it first, or the kept grids are already as big as the
+    // image - the grid kept is returned
+    private <T> T keep(ConcurrentHashMap<String, T> kept, String grid, T value, int length) {
+        if (this.keptCells.addAndGet(length) > (long) this.img.getWidth() * this.img.getHeight()) {
+            this.keptCells.addAndGet(-length);
+            return value;
+        }
+        T previous = kept.putIfAbsent(grid, value);
+        if (previous != null) {
+            this.keptCells.addAndGet(-length);
+            return previous;
+        }
+        return value;
+    }
+
+    // Make a grid the finest one so far if it has more cells than it
+    private synchronized void keepIfFinest(FineGrid grid) {
+        if (this.finest == null || this.finest.cells.length < grid.cells.length) {
+            this.finest = grid;
+        }
+    }
+
+    // Reduce a grid from the finest grid so far when each of its cells is a whole block of finer
+    // cells, the finer cells weighing by their pixels. Null when it is not, or when the grid is to be
+    // scanned anyway for its colors.
+    // Package-private for BrightnessPyramidTest: cellsOf falls back to scanning, so only this tells
+    // whether a grid was reduced.
+    float[] fromFinestGrid(int cols, int rows, double cellWidth, double cellHeight) {
+        FineGrid finest = this.finest;
+        if (finest == null || (this.colored && isTooBigForIntegral())) {
+            return null;
+        }
+        int fineCols = finest.cols, fineRows = finest.rows;
+        int blockWidth = blockOf(cellWidth, finest.cellWidth), blockHeight = blockOf(cellHeight, finest.cellHeight);
+        if (blockWidth == 0 || blockHeight == 0 || cols * blockWidth > fineCols || rows * blockHeight > fineRows) {
+            return null;
+        }
+        if (cols == fineCols && rows == fineRows) {
+            return finest.cells;
+        }
+        // cells scanned from the rows have edges rounded to whole pixels, so they may differ in size,
+        // and the rounded edges of the grid must fall on edges of blocks
+        int[] colEdges = finest.scanned ? edgesOf(fineCols, finest.cellWidth) : null;
+        int[] rowEdges = finest.scanned ? edgesOf(fineRows, finest.cellHeight) : null;
+        if (finest.scanned && (!isOnBlockEdges(edgesOf(cols, cellWidth), colEdges, blockWidth) ||
+                !isOnBlockEdges(edgesOf(rows, cellHeight), rowEdges, blockHeight))) {
+            return null;
+        }
+        float[] cells = new float[cols * rows];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                double sum = 0, weights = 0;
+                for (int fineY = y * blockHeight; fineY < (y + 1) * blockHeight; fineY++) {
+                    for (int fineX = x * blockWidth; fineX < (x + 1) * blockWidth; fineX++) {
+                        double weight = colEdges == null ? 1 : (double) (colEdges[fineX + 1] - colEdges[fineX]) *
+                                (rowEdges[fineY + 1] - rowEdges[fineY]);
+                        sum += finest.cells[fineY * fineCols + fineX] * weight;
+                        weights += weight;
+                    }
+                }
+                cells[y * cols + x] = (float) (sum / weights);
+            }
+        }
+        return cells;
+    }
+
+    // Whether every edge of the cells is the edge of a block of fine cells - package-private for
+    // BrightnessPyramidTest, which checks edges that round off the blocks
+    static boolean isOnBlockEdges(int[] edges, int[] fineEdges, int block) {
+        for (int i = 0; i < edges.length; i++) {
+            if (edges[i] != fineEdges[i * block]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // How many fine cells make up a cell, 0 if it is not a whole number of them
+    private static int blockOf(double cellSize, double fineCellSize) {
+        double ratio = cellSize / fineCellSize;
+        long block = Math.round(ratio);
+        return block >= 1 && Math.abs(ratio - block) <= BLOCK_TOLERANCE * block ? (int) block : 0;
+    }
+
+    // Read a whole level from the integral image, or by scanning the image if it is too big for one
+    private float[] fromImage(int pixels) {
+        int cols = this.img.getWidth() / pixels, rows = this.img.getHeight() / pixels;
+        if (isTooBigForIntegral()) {
+            return scanCells(gridKeyOf(cols, rows, pixels, pixels), cols, rows, pixels, pixels);
+        }
+        float[] level = new float[cols * rows];
+        BrightnessIntegral integral = integral();
+        this.img.forEachSquareCell(pixels, (cellX, cellY, x, y, size) ->
+                level[cellY * cols + cellX] = integral.brightnessOf(x, y, size, size));
+        return level;
+    }
+
+    // Read a grid of cells by scanning the image rows, along with the colors of the cells when colored,
+    // unless it was kept meanwhile
+    private synchronized float[] scanCells(String grid, int cols, int rows, double cellWidth, double cellHeight) {
+        float[] cells = this.cells.get(grid);
+        if (cells != null) {
+            return cells;
+        }
+        int[] colors = this.colored ? new int[cols * rows] : null;
+        cells = fromRows(cols, rows, cellWidth, cellHeight, colors);
+        if (colors != null) {
+            keep(this.colors, grid, colors, colors.length);
+        }
+        return keep(this.cells, grid, cells, cells.length);
+    }
+
+    // Read the colors of a grid of cells by scanning the image rows, along with their brightness,
+    // unless they were kept meanwhile
+    private synchronized int[] scanColors(String grid, int cols, int rows, double cellWidth, double cellHeight) {
+        int[] colors = this.colors.get(grid);
+        if (colors != null) {
+            return colors;
+        }
+        colors = new int[cols * rows];
+        float[] cells = fromRows(cols, rows, cellWidth, cellHeight, colors);
+        keep(this.cells, grid, cells, cells.length);
+        return keep(this.colors, grid, colors, colors.length);
+    }
+
+    // Read a grid of cells with one pass over the image rows, keeping only one row of cell sums, and
+    // the cells packed RGB into colors if it is not null. Cell edges are rounded to whole pixels, so
+    // cells may differ by a pixel in size.
+    private float[] fromRows(int cols, int rows, double cellWidth, double cellHeight, int[] colors) {
+        int[] colEdges = edgesOf(cols, cellWidth), rowEdges = edgesOf(rows, cellHeight);
+        float[] cells = new float[cols * rows];
+        double[] sums = new double[cols];
+        long[] red = new long[cols], green = new long[cols], blue = new long[cols];
+        int[] rgbRow = new int[colEdges[cols]];
+        for (int y = 0, cellY = 0; y < rowEdges[rows]; y++) {
+            this.img.getRgbRow(0, y, rgbRow.length, rgbRow, 0);
+            for (int x = 0; x < cols; x++) {
+                sums[x] += GreyLevels.INSTANCE.sumOf(rgbRow, colEdges[x], colEdges[x + 1]);
+                if (colors != null) {
+                    for (int i = colEdges[x]; i < colEdges[x + 1]; i++) {
+                        red[x] += (rgbRow[i] >> 16) & 0xFF;
+                        green[x] += (rgbRow[i] >> 8) & 0xFF;
+                        blue[x] += rgbRow[i] & 0xFF;
+                    }
+                }
+            }
+            if (y + 1 == rowEdges[cellY + 1]) {
+                for (int x = 0; x < cols; x++) {
+                    long cellPixels = (long) (colEdges[x + 1] - colEdges[x]) *
+                            (rowEdges[cellY + 1] - rowEdges[cellY]);
+                    cells[cellY * cols + x] =
+                            (float) (sums[x] / ((double) cellPixels * BrightnessImgCharMatcher.MAX_COLOR));
+                    if (colors != null) {
+                        colors[cellY * cols + x] = (int) ((red[x] + cellPixels / 2) / cellPixels) << 16 |
+                                (int) ((green[x] + cellPixels / 2) / cellPixels) << 8 |
+                                (int) ((blue[x] + cellPixels / 2) / cellPixels);
+                    }
+                }
+                Arrays.fill(sums, 0);
+                Arrays.fill(red, 0);
+                Arrays.fill(green, 0);
+                Arrays.fill(blue, 0);
+                cellY++;
+            }
+        }
+        return cells;
+    }
+
+    // Pixel edges of cells of the given size, rounded to whole pixels - package-private for
+    // BrightnessPyramidTest, which builds the edges isOnBlockEdges is tested on
+    static int[] edgesOf(int cells, double cellSize) {
+        int[] edges = new int[cells + 1];
+        for (int i = 0; i <= cells; i++) {
+            edges[i] = (int) Math.round(i * cellSize);
+        }
+        return edges;
+    }
+
+    // Whether an integral image of the image would take too much memory - a colored one takes a table
+    // per color channel besides the brightness table
+    private boolean isTooBigForIntegral() {
+        long tables = this.colored ? COLORED_INTEGRAL_TABLES : 1;
+        return (long) this.img.getWidth() * this.img.getHeight() * tables > MAX_INTEGRAL_PIXELS;
+    }
+
+    // The integral image, built on first use
+    private synchronized BrightnessIntegral integral() {
+        if (this.integral == null) {
+            this.integral = new BrightnessIntegral(this.img, this.colored);
+        }
+        return this.integral;
+    }
+
+    // Average each 2x2 block of the level of the given cell size - a last odd row or column of
+    // cells is left out, as it is by the coarser level itself
+    private float[] reduce(float[] fine, int finePixels) {
+        int fineCols = this.img.getWidth() / finePixels;
+        int cols = this.img.getWidth() / (2 * finePixels), rows = this.img.getHeight() / (2 * finePixels);
+        float[] coarse = new float[cols * rows];
+        for (int y = 0; y < rows; y++) {
+            int top = 2 * y * fineCols, bottom = top + fineCols;
+            for (int x = 0; x < cols; x++) {
+                coarse[y * cols + x] = (fine[top + 2 * x] + fine[top + 2 * x + 1] +
+                        fine[bottom + 2 * x] + fine[bottom + 2 * x + 1]) / 4;
+            }
+        }
+        return coarse;
+    }
+}
@@ -0,0 +1,405 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The part of the matchers common to all of them: reading a grid of cells from the brightness
+ * pyramid of the image, splitting the rows into bands matched in parallel, and keeping the grids
+ * and compiled char sets of earlier calls. Subclasses tell what is read of every cell, how a char
+ * set is compiled, and how a cell is matched to a compiled char set.
+ * Cells can be dithered, see Dithering.
+ * One matcher can serve several threads at once: the char set of a call is compiled into an
+ * immutable view handed down the call instead of kept in the matcher, and the kept ascii art, char
+ * sets and cells are looked up without locks. Only passes over the image take turns, see
+ * BrightnessPyramid.
+ * setWorkers and setDithering are meant to be called before the matcher is shared.
+ *
+ * @param <S> the compiled char set of the subclass
+ */
+abstract class CellGridMatcher<S extends BrightnessLevels> implements ImgCharMatcher {
+    private static final int BANDS_PER_WORKER = 4;
+    private static final int BAYER_SIZE = 4;
+    private static final float[] BAYER_MATRIX = {0, 8, 2, 10, 12, 4, 14, 6, 3, 11, 1, 9, 15, 7, 13, 5};
+    private static final float RIGHT_ERROR = 7f / 16, BELOW_LEFT_ERROR = 3f / 16, BELOW_ERROR = 5f / 16,
+            BELOW_RIGHT_ERROR = 1f / 16;
+
+    final CharBrightnessTable allCharsBrightness;
+
+    private final Image img;
+    private final BrightnessPyramid brightnessPyramid;
+    private final RenderMemo<S> memo = new RenderMemo<>();
+    private volatile int workers = 1;
+    private volatile Dithering dithering = Dithering.NONE;
+    private ForkJoinPool workersPool = null;
+
+    /**
+     * Constructor
+     *
+     * @param img                The wanted image to ascii art
+     * @param allCharsBrightness The brightness of the chars of the font to use
+     */
+    CellGridMatcher(Image img, CharBrightnessTable allCharsBrightness) {
+        this.img = img;
+        this.allCharsBrightness = allCharsBrightness;
+        this.brightnessPyramid = new BrightnessPyramid(img);
+    }
+
+    /**
+     * Same as chooseChars with square cells
+     *
+     * @param numCharsInRow chars per row
+     * @param charSet       The set of wanted chars to use
+     * @return An image represented by chars
+     */
+    @Override
+    public char[][] chooseChars(int numCharsInRow, Character[] charSet) {
+        return chooseChars(numCharsInRow, charSet, 1);
+    }
+
+    /**
+     * Same as chooseChars with square cells, but each cell is cellAspect times higher than it is
+     * wide. numCharsInRow need not divide the image width - cells may span fractions of pixels,
+     * which count by the share of them inside the cell.
+     *
+     * @param numCharsInRow chars per row
+     * @param charSet       The set of wanted chars to use
+     * @param cellAspect    cell height divided by cell width
+     * @return An image represented by chars, as many rows as whole cells fit in the image height
+     */
+    @Override
+    public char[][] chooseChars(int numCharsInRow, Character[] charSet, double cellAspect) {
+        double cellWidth = (double) this.img.getWidth() / numCharsInRow;
+        char[][] asciiArt = new char[(int) (this.img.getHeight() / (cellWidth * cellAspect))][];
+        chooseChars(numCharsInRow, charSet, cellAspect, (row, y) -> asciiArt[y] = row.clone());
+        return asciiArt;
+    }
+
+    /**
+     * Same as chooseChars, but every row is handed over as soon as it is matched instead of
+     * waiting for the whole image, so it can be written out while later rows are still matched.
+     * Rows are handed over in order, on the calling thread. Rows are kept for later calls with the
+     * same arguments, which hand them over without matching again, so they must not be changed.
+     *
+     * @param numCharsInRow chars per row
+     * @param charSet       The set of wanted chars to use
+     * @param cellAspect    cell height divided by cell width
+     * @param rowSink       Takes every row of chars along with its index
+     */
+    @Override
+    public void chooseChars(int numCharsInRow, Character[] charSet, double cellAspect,
+                            ObjIntConsumer<char[]> rowSink) {
+        String canonicalCharSet = RenderMemo.canonicalOf(charSet);
+        Dithering dithering = this.dithering;
+        char[][] memoized = this.memo.gridOf(numCharsInRow, cellAspect, canonicalCharSet, dithering);
+        if (memoized != null) {
+            StageTimer timer = Metrics.start(Stage.MATCHING);
+            for (int y = 0; y < memoized.length; y++) {
+                rowSink.accept(memoized[y], y);
+            }
+            timer.stop((long) memoized.length * numCharsInRow);
+            return;
+        }
+        S charsToUse = this.memo.charSetOf(canonicalCharSet, () -> compile(charSet));
+        double cellWidth = (double) this.img.getWidth() / numCharsInRow, cellHeight = cellWidth * cellAspect;
+        int rows = (int) (this.img.getHeight() / cellHeight);
+        float[] cells = cellsOf(this.brightnessPyramid, numCharsInRow, rows, cellWidth, cellHeight);
+        char[][] asciiArt = new char[rows][];
+        StageTimer timer = Metrics.start(Stage.MATCHING);
+        ObjIntConsumer<char[]> keepingSink = (row, y) -> {
+            asciiArt[y] = row;
+            rowSink.accept(row, y);
+        };
+        if (dithering == Dithering.DIFFUSION) {
+            diffuseImageToAscii(charsToUse, numCharsInRow, rows, cells, keepingSink);
+        } else {
+            convertImageToAscii(charsToUse, dithering, numCharsInRow, rows, cells, keepingSink);
+        }
+        timer.stop((long) rows * numCharsInRow);
+        this.memo.putGrid(numCharsInRow, cellAspect, canonicalCharSet, dithering, asciiArt);
+    }
+
+    /**
+     * The mean color of each cell of chooseChars with the same arguments
+     *
+     * @param numCharsInRow chars per row
+     * @param cellAspect    cell height divided by cell width
+     * @return packed RGB of every cell, same size as the chars chooseChars returns
+     */
+    @Override
+    public int[][] chooseColors(int numCharsInRow, double cellAspect) {
+        double cellWidth = (double) this.img.getWidth() / numCharsInRow, cellHeight = cellWidth * cellAspect;
+        int rows = (int) (this.img.getHeight() / cellHeight);
+        int[] colors = this.brightnessPyramid.colorsOf(numCharsInRow, rows, cellWidth, cellHeight);
+        int[][] cellColors = new int[rows][];
+        for (int y = 0; y < rows; y++) {
+            cellColors[y] = Arrays.copyOfRange(colors, y * numCharsInRow, (y + 1) * numCharsInRow);
+        }
+        return cellColors;
+    }
+
+    /**
+     * Same as chooseColors with square cells
+     *
+     * @param numCharsInRow chars per row
+     * @return packed RGB of every cell, same size as the chars chooseChars returns
+     */
+    @Override
+    public int[][] chooseColors(int numCharsInRow) {
+        return chooseColors(numCharsInRow, 1);
+    }
+
+    /**
+     * Set whether the cells color is kept along with their brightness, so that chooseColors reuses
+     * the pass over the image of chooseChars instead of making one of its own. Keeping colors takes
+     * more memory.
+     *
+     * @param colored whether colored output is wanted
+     */
+    @Override
+    public void setColored(boolean colored) {
+        this.brightnessPyramid.setColored(colored);
+    }
+
+    /**
+     * Compute the cells of the given resolution ahead of chooseChars
+     *
+     * @param numCharsInRow chars per row
+     */
+    @Override
+    public void prepare(int numCharsInRow) {
+        double cellWidth = (double) this.img.getWidth() / numCharsInRow;
+        cellsOf(this.brightnessPyramid, numCharsInRow, (int) (this.img.getHeight() / cellWidth), cellWidth, cellWidth);
+    }
+
+    /**
+     * Forget the ascii art kept from earlier calls, keeping the brightness pyramid of the image and
+     * the compiled char sets
+     */
+    @Override
+    public void forgetAsciiArt() {
+        this.memo.clearGrids();
+    }
+
+    /**
+     * Release the brightness pyramid kept for the image, and the ascii art kept from earlier calls.
+     * They are rebuilt by the next chooseChars.
+     */
+    @Override
+    public void release() {
+        this.brightnessPyramid.release();
+        this.memo.clearGrids();
+    }
+
+    /**
+     * @return bytes of memory kept for the image - its brightness pyramid and the ascii art kept
+     * from earlier calls - besides the image itself
+     */
+    public long retainedBytes() {
+        return this.brightnessPyramid.retainedBytes() + this.memo.gridChars() * Character.BYTES;
+    }
+
+    /**
+     * @return number of chooseChars calls answered by ascii art kept from an earlier call
+     */
+    public long getMemoHits() {
+        return this.memo.hits();
+    }
+
+    /**
+     * @return number of chooseChars calls that had to match the chars
+     */
+    public long getMemoMisses() {
+        return this.memo.misses();
+    }
+
+    /**
+     * Set how many threads render the rows of the ascii art. The output does not depend
+     * on this value - each cell is computed independently.
+     *
+     * @param workers number of worker threads, 1 for rendering on the calling thread
+     */
+    @Override
+    public synchronized void setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException();
+        }
+        if (this.workersPool != null) {
+            this.workersPool.shutdown();
+            this.workersPool = null;
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Set how the brightness lost to matching cells is made up for, NONE by default. Ascii art kept
+     * from earlier calls is kept apart for every dithering.
+     *
+     * @param dithering the dithering of the next chooseChars calls
+     */
+    @Override
+    public void setDithering(Dithering dithering) {
+        if (dithering == null) {
+            throw new IllegalArgumentException();
+        }
+        this.dithering = dithering;
+    }
+
+    /**
+     * Compile a char set for matching
+     *
+     * @param charSet The set of wanted chars to use
+     * @return the compiled char set
+     */
+    abstract S compile(Character[] charSet);
+
+    /**
+     * Read what is matched of every cell of a grid
+     *
+     * @param pyramid    the brightness pyramid of the image
+     * @param cols       cells in a row
+     * @param rows       rows of cells
+     * @param cellWidth  cell width in pixels
+     * @param cellHeight cell height in pixels
+     * @return the cells, in the layout matchRow reads them in
+     */
+    abstract float[] cellsOf(BrightnessPyramid pyramid, int cols, int rows, double cellWidth, double cellHeight);
+
+    /**
+     * Scratch buffers for matchCell, made once for every band of rows so that matching a cell
+     * allocates nothing. None by default.
+     *
+     * @return the buffers handed to matchCell, null when it needs none
+     */
+    float[][] newScratch() {
+        return null;
+    }
+
+    /**
+     * Match the char of a cell, its brightness offset by the given amount. Called from several
+     * threads at once, each with scratch buffers of its own.
+     *
+     * @param charSet the compiled char set
+     * @param cells   the cells read by cellsOf
+     * @param cols    cells in a row
+     * @param rows    rows of cells
+     * @param x       the column of the cell
+     * @param y       the row of the cell
+     * @param offset  added to the brightness of the cell
+     * @param scratch buffers made by newScratch, overwritten at will
+     * @return the char of the cell
+     */
+    abstract char matchCell(S charSet, float[] cells, int cols, int rows, int x, int y, float offset,
+                            float[][] scratch);
+
+    /**
+     * The brightness of a cell, as matchCell sees it with no offset
+     *
+     * @param cells the cells read by cellsOf
+     * @param cols  cells in a row
+     * @param rows  rows of cells
+     * @param x     the column of the cell
+     * @param y     the row of the cell
+     * @return the brightness between 0 and 1
+     */
+    abstract float cellBrightnessOf(float[] cells, int cols, int rows, int x, int y);
+
+    // Converting images to ascii - the rows are split into bands, rendered in parallel if asked to.
+    // Bands are handed over in order as soon as they and all the bands before them are done.
+    private void convertImageToAscii(S charsToUse, Dithering dithering, int numCharsInRow, int rows, float[] cells,
+                                     ObjIntConsumer<char[]> rowSink) {
+        int workers = this.workers;
+        if (workers == 1 || rows == 1) {
+            for (int y = 0; y < rows; y++) {
+                rowSink.accept(convertRowsToAscii(charsToUse, dithering, numCharsInRow, rows, cells, y, y + 1)[0], y);
+            }
+            return;
+        }
+        ForkJoinPool workersPool = workersPool();
+        int bands = Math.min(rows, workers * BANDS_PER_WORKER);
+        List<ForkJoinTask<char[][]>> bandTasks = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            int fromRow = band * rows / bands, toRow = (band + 1) * rows / bands;
+            bandTasks.add(workersPool.submit(() -> convertRowsToAscii(charsToUse, dithering, numCharsInRow, rows,
+                    cells, fromRow, toRow)));
+        }
+        try {
+            for (int band = 0, y = 0; band < bands; band++) {
+                for (char[] row : bandTasks.get(band).join()) {
+                    rowSink.accept(row, y++);
+                }
+            }
+        } finally {
+            bandTasks.forEach(task -> task.cancel(false));
+        }
+    }
+
+    // The pool of the workers, started on first use
+    private synchronized ForkJoinPool workersPool() {
+        if (this.workersPool == null) {
+            this.workersPool = new ForkJoinPool(this.workers);
+        }
+        return this.workersPool;
+    }
+
+    // Converting the rows [fromRow, toRow), offsetting the cells by the Bayer matrix when ordered
+    private char[][] convertRowsToAscii(S charsToUse, Dithering dithering, int numCharsInRow, int rows,
+                                        float[] cells, int fromRow, int toRow) {
+        char[][] asciiRows = new char[toRow - fromRow][numCharsInRow];
+        float[][] scratch = newScratch();
+        for (int y = fromRow; y < toRow; y++) {
+            char[] row = asciiRows[y - fromRow];
+            for (int x = 0; x < numCharsInRow; x++) {
+                float offset = dithering != Dithering.ORDERED ? 0 :
+                        orderedOffsetOf(charsToUse, cellBrightnessOf(cells, numCharsInRow, rows, x, y), x, y);
+                row[x] = matchCell(charsToUse, cells, numCharsInRow, rows, x, y, offset, scratch);
+            }
+        }
+        return asciiRows;
+    }
+
+    // The offset of a cell under ordered dithering - the threshold of the Bayer matrix scaled to the gap
+    // between the levels around the cell brightness, since the levels of chars are not evenly spread, and
+    // kept between these levels so that no other level can be closer
+    private static float orderedOffsetOf(BrightnessLevels charsToUse, float brightness, int x, int y) {
+        float threshold = (BAYER_MATRIX[(y % BAYER_SIZE) * BAYER_SIZE + x % BAYER_SIZE] + 0.5f) / BAYER_MATRIX.length;
+        float below = charsToUse.levelBelow(brightness), above = charsToUse.levelAbove(brightness);
+        float offset = (threshold - 0.5f) * (above - below);
+        return Math.max(below - brightness, Math.min(above - brightness, offset));
+    }
+
+    // Converting the rows one after the other with Floyd-Steinberg error diffusion. Only the errors
+    // spread to the current row and to the next one are kept, each with a cell of margin on both sides.
+    private void diffuseImageToAscii(S charsToUse, int numCharsInRow, int rows, float[] cells,
+                                     ObjIntConsumer<char[]> rowSink) {
+        float[] rowErrors = new float[numCharsInRow + 2], nextRowErrors = new float[numCharsInRow + 2];
+        float[][] scratch = newScratch();
+        for (int y = 0; y < rows; y++) {
+            char[] row = new char[numCharsInRow];
+            for (int x = 0; x < numCharsInRow; x++) {
+                float offset = rowErrors[x + 1];
+                row[x] = matchCell(charsToUse, cells, numCharsInRow, rows, x, y, offset, scratch);
+                float error = cellBrightnessOf(cells, numCharsInRow, rows, x, y) + offset -
+                        charsToUse.brightnessOf(row[x]);
+                rowErrors[x + 2] += error * RIGHT_ERROR;
+                nextRowErrors[x] += error * BELOW_LEFT_ERROR;
+                nextRowErrors[x + 1] += error * BELOW_ERROR;
+                nextRowErrors[x + 2] += error * BELOW_RIGHT_ERROR;
+            }
+            rowSink.accept(row, y);
+            float[] spent = rowErrors;
+            rowErrors = nextRowErrors;
+            nextRowErrors = spent;
+            Arrays.fill(nextRowErrors, 0);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ascii_art.img_to_char;
+
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
+import java.util.Arrays;
+
+/**
+ * The brightness of every printable char of a font, as rendered by CharRenderer.getBrightnessMap,
+ * along with the brightness of every pixel of the chars. Since the chars are supersampled, the
+ * brightness of a char is not rounded to whole pixels of CHAR_RESOLUTION, and chars that cover
+ * almost as many pixels still differ.
+ * The table is immutable, so one table can be shared by all the matchers of the same font.
+ */
+public class CharBrightnessTable {
+    static final char FIRST_CHAR = 32;
+    static final char LAST_CHAR = 126;
+
+    private final String font;
+    private final float[] brightness = new float[LAST_CHAR - FIRST_CHAR + 1];
+    private final float[][] brightnessMaps = new float[LAST_CHAR - FIRST_CHAR + 1][];
+
+    /**
+     * Constructor - renders all the printable chars of the font
+     *
+     * @param font The font type to use
+     */
+    public CharBrightnessTable(String font) {
+        this.font = font;
+        StageTimer timer = Metrics.start(Stage.GLYPHS);
+        for (char ch = FIRST_CHAR; ch <= LAST_CHAR; ch++) {
+            float[] map = CharRenderer.getBrightnessMap(ch, BrightnessImgCharMatcher.CHAR_RESOLUTION, font);
+            double sum = 0;
+            for (float pixel : map) {
+                sum += pixel;
+            }
+            this.brightnessMaps[ch - FIRST_CHAR] = map;
+            this.brightness[ch - FIRST_CHAR] = (float) (sum / map.length);
+        }
+        timer.stop(this.brightness.length);
+    }
+
+    /**
+     * @return The font of the chars
+     */
+    public String getFont() {
+        return this.font;
+    }
+
+    /**
+     * @param ch a printable ascii char
+     * @return the share of the char square left blank, between 0 and 1
+     */
+    public float brightnessOf(char ch) {
+        checkPrintable(ch);
+        return this.brightness[ch - FIRST_CHAR];
+    }
+
+    /**
+     * @param ch a printable ascii char
+     * @return the share of every pixel of the char left blank, CHAR_RESOLUTION x CHAR_RESOLUTION
+     * pixels row after row - shared, so it must not be changed
+     */
+    float[] brightnessMapOf(char ch) {
+        checkPrintable(ch);
+        return this.brightnessMaps[ch - FIRST_CHAR];
+    }
+
+    /**
+     * The distinct chars of a char set sorted by brightness, and chars of the same brightness by code
+     *
+     * @param charSet a set of printable chars, in any order and possibly with repeats
+     * @return the sorted chars
+     */
+    char[] sortedByBrightness(Character[] charSet) {
+        // brightness is never negative, so the order of its bits is the order of its values
+        long[] keys = new long[charSet.length];
+        for (int i = 0; i < charSet.length; i++) {
+            keys[i] = (long) Float.floatToIntBits(brightnessOf(charSet[i])) << Character.SIZE | charSet[i];
+        }
+        Arrays.sort(keys);
+        char[] chars = new char[keys.length];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                chars[count++] = (char) keys[i];
+            }
+        }
+        return Arrays.copyOf(chars, count);
+    }
+
+    // Only printable chars are in the table
+    private static void checkPrintable(char ch) {
+        if (ch < FIRST_CHAR || LAST_CHAR < ch) {
+            throw new IllegalArgumentException();
+        }
+    }
+}
@@ -1,7 +1,18 @@
 package ascii_art.img_to_char;
 
+import metrics.CacheKind;
+import metrics.Metrics;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Inspired by, and partly copied from
@@ -10,20 +21,259 @@ import java.awt.image.BufferedImage;
  * https://dzone.com/articles/ascii-art-generator-java
  * Adaptations made by Dan Nirel.
  * The class renders (draws) characters to a binary "image" (2D array of booleans).
+ * Rendered characters are cached per font, and the cache can be saved to / loaded from a file
+ * so a new process does not need to rasterize fonts it has already seen.
+ * getBrightnessMap draws a char supersampled and keeps only the coverage of every pixel, one byte
+ * per pixel, so the supersampled image is never cached.
+ * The build packages the coverage of the printable chars of common monospace fonts, at the size
+ * of the matchers, as the resource PREBUILT_RESOURCE in the cache file format gzipped. It is
+ * loaded on the first char missing from the cache and kept apart from it, so it is never saved
+ * to a cache file. Chars of those fonts are never drawn, and AWT fonts are not loaded at all
+ * unless another font is asked for.
+ * -Dascii_art.glyphs.prebuilt=false draws all the chars with the fonts installed instead.
  */
 public class CharRenderer {
     private static final double X_OFFSET_FACTOR = 0.2;
     private static final double Y_OFFSET_FACTOR = 0.75;
+    // cache files of the first format hold only images, the supersampled ones getBrightnessMap drew
+    private static final int OLD_CACHE_FILE_MAGIC = 0x41534743;
+    private static final int CACHE_FILE_MAGIC = 0x41534744;
+    private static final byte GLYPH_ENTRY = 0;
+    private static final byte COVERAGE_ENTRY = 1;
+
+    /**
+     * Rendered pixels in a row and in a column of every pixel of getBrightnessMap. Its square is
+     * kept in a byte, so it is at most 15.
+     */
+    public static final int SUPERSAMPLING = 8;
+    private static final String PREBUILT_RESOURCE = "prebuilt-glyphs.bin.gz";
+    private static final String PREBUILT_PROPERTY = "ascii_art.glyphs.prebuilt";
+
+    private static final Chars cache = new Chars();
+    private static final Chars prebuilt = new Chars();
+    private static volatile boolean prebuiltLoaded = false;
 
     /**
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
+     * The returned array is shared through the cache and must not be modified.
      */
     public static boolean[][] getImg(char c, int pixels, String fontName) {
-        int key = (pixels << 8) | c;
-        return render(c, pixels, fontName);
+        int key = (pixels << 16) | c;
+        Map<Integer, boolean[][]> fontCache = cache.glyphs.computeIfAbsent(fontName, name -> new ConcurrentHashMap<>());
+        boolean[] rendered = {false};
+        boolean[][] img = fontCache.computeIfAbsent(key, k -> {
+            rendered[0] = true;
+            return render(c, pixels, fontName);
+        });
+        Metrics.cache(CacheKind.GLYPHS).count(!rendered[0]);
+        return img;
+    }
+
+    /**
+     * Renders a given character SUPERSAMPLING times bigger than the pixels specified, and counts
+     * the share of every pixel left blank - like an antialiased render, the pixels on the edges of
+     * the strokes are partly blank, so the brightness of chars does not come in steps of a pixel.
+     *
+     * @param c        the character
+     * @param pixels   size of the map in pixels
+     * @param fontName the font
+     * @return the share of every pixel left blank, between 0 and 1, row after row
+     */
+    public static float[] getBrightnessMap(char c, int pixels, String fontName) {
+        int key = (pixels << 16) | c;
+        Map<Integer, byte[]> fontCache = cache.coverages.computeIfAbsent(fontName, name -> new ConcurrentHashMap<>());
+        byte[] coverage = fontCache.get(key);
+        if (coverage == null) {
+            if (!prebuiltLoaded) {
+                loadPrebuilt();
+            }
+            Map<Integer, byte[]> fontPrebuilt = prebuilt.coverages.get(fontName);
+            coverage = fontPrebuilt == null ? null : fontPrebuilt.get(key);
+        }
+        boolean[] rendered = {false};
+        if (coverage == null) {
+            coverage = fontCache.computeIfAbsent(key, k -> {
+                rendered[0] = true;
+                return coverageOf(c, pixels, fontName);
+            });
+        }
+        Metrics.cache(CacheKind.GLYPHS).count(!rendered[0]);
+        float[] map = new float[coverage.length];
+        for (int i = 0; i < map.length; i++) {
+            map[i] = (float) (coverage[i] & 0xff) / (SUPERSAMPLING * SUPERSAMPLING);
+        }
+        return map;
+    }
+
+    /**
+     * Load rendered characters saved by saveCache into the cache.
+     *
+     * @param filename the cache file
+     * @throws IOException if the file could not be read or is not a cache file
+     */
+    public static void loadCache(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            readCache(in, filename, cache);
+        }
+    }
+
+    /**
+     * Save all the rendered characters in the cache to a file. The prebuilt chars are not saved,
+     * as they are in every build.
+     *
+     * @param filename the cache file
+     * @throws IOException if the file could not be written
+     */
+    public static void saveCache(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            writeCache(out, cache);
+        }
+    }
+
+    /**
+     * Draw the printable chars of the given fonts and save their coverage maps, gzipped, as the
+     * prebuilt chars resource. Run by the build - the chars are drawn with the fonts installed where
+     * it runs, and any prebuilt chars already loaded are not used. Fonts that are not installed are
+     * left out with a warning, as AWT would draw them with another font.
+     *
+     * @param filename  the resource file
+     * @param pixels    size of the coverage maps in pixels
+     * @param fontNames the fonts to draw
+     * @return the fonts drawn
+     * @throws IOException if the file could not be written
+     */
+    static List<String> savePrebuilt(String filename, int pixels, String... fontNames) throws IOException {
+        Chars chars = new Chars();
+        List<String> drawn = new ArrayList<>();
+        for (String fontName : fontNames) {
+            if (!isInstalled(fontName)) {
+                Logger.getGlobal().warning("Font " + fontName + " is not installed, its chars are not prebuilt");
+                continue;
+            }
+            drawn.add(fontName);
+            Map<Integer, byte[]> fontChars = chars.coverages.computeIfAbsent(fontName,
+                    name -> new ConcurrentHashMap<>());
+            for (char c = CharBrightnessTable.FIRST_CHAR; c <= CharBrightnessTable.LAST_CHAR; c++) {
+                fontChars.put((pixels << 16) | c, coverageOf(c, pixels, fontName));
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(filename))))) {
+            writeCache(out, chars);
+        }
+        return drawn;
     }
+
+    // Whether a font is installed - AWT draws with a default font the fonts it does not find
+    private static boolean isInstalled(String fontName) {
+        Font font = new Font(fontName, Font.PLAIN, 1);
+        return font.getFamily().equalsIgnoreCase(fontName) || font.getFontName().equalsIgnoreCase(fontName);
+    }
+
+    // Load the prebuilt chars resource once, apart from the cache. Missing when the classes were
+    // built without it, and then the chars are all drawn.
+    private static synchronized void loadPrebuilt() {
+        if (prebuiltLoaded) {
+            return;
+        }
+        InputStream resource = Boolean.parseBoolean(System.getProperty(PREBUILT_PROPERTY, "true")) ?
+                CharRenderer.class.getResourceAsStream(PREBUILT_RESOURCE) : null;
+        if (resource != null) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(resource)))) {
+                readCache(in, PREBUILT_RESOURCE, prebuilt);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        prebuiltLoaded = true;
+    }
+
+    // Read a cache file into the given chars, replacing chars already in them. The images of a cache
+    // file of the first format are read as coverage maps when their size is a multiple of SUPERSAMPLING.
+    private static void readCache(DataInputStream in, String filename, Chars chars) throws IOException {
+        int magic = in.readInt();
+        if (magic != CACHE_FILE_MAGIC && magic != OLD_CACHE_FILE_MAGIC) {
+            throw new IOException("Not a character cache file: " + filename);
+        }
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            String fontName = in.readUTF();
+            int key = in.readInt();
+            int pixels = key >>> 16;
+            byte kind = magic == CACHE_FILE_MAGIC ? in.readByte() : GLYPH_ENTRY;
+            if (kind == COVERAGE_ENTRY) {
+                byte[] coverage = new byte[pixels * pixels];
+                in.readFully(coverage);
+                chars.coverages.computeIfAbsent(fontName, name -> new ConcurrentHashMap<>()).put(key, coverage);
+                continue;
+            }
+            if (kind != GLYPH_ENTRY) {
+                throw new IOException("Unknown entry in character cache file: " + filename);
+            }
+            boolean[][] matrix = new boolean[pixels][pixels];
+            for (boolean[] row : matrix) {
+                for (int x = 0; x < pixels; x++) {
+                    row[x] = in.readBoolean();
+                }
+            }
+            if (magic == OLD_CACHE_FILE_MAGIC && pixels % SUPERSAMPLING == 0) {
+                chars.coverages.computeIfAbsent(fontName, name -> new ConcurrentHashMap<>())
+                        .put(((pixels / SUPERSAMPLING) << 16) | (key & 0xffff), coverageOf(matrix));
+            } else {
+                chars.glyphs.computeIfAbsent(fontName, name -> new ConcurrentHashMap<>()).put(key, matrix);
+            }
+        }
+    }
+
+    // Write chars in the cache file format, every entry marked as an image or a coverage map
+    private static void writeCache(DataOutputStream out, Chars chars) throws IOException {
+        out.writeInt(CACHE_FILE_MAGIC);
+        out.writeInt(chars.glyphs.values().stream().mapToInt(Map::size).sum() +
+                chars.coverages.values().stream().mapToInt(Map::size).sum());
+        for (Map.Entry<String, Map<Integer, boolean[][]>> font : chars.glyphs.entrySet()) {
+            for (Map.Entry<Integer, boolean[][]> entry : font.getValue().entrySet()) {
+                out.writeUTF(font.getKey());
+                out.writeInt(entry.getKey());
+                out.writeByte(GLYPH_ENTRY);
+                for (boolean[] row : entry.getValue()) {
+                    for (boolean pixel : row) {
+                        out.writeBoolean(pixel);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Map<Integer, byte[]>> font : chars.coverages.entrySet()) {
+            for (Map.Entry<Integer, byte[]> entry : font.getValue().entrySet()) {
+                out.writeUTF(font.getKey());
+                out.writeInt(entry.getKey());
+                out.writeByte(COVERAGE_ENTRY);
+                out.write(entry.getValue());
+            }
+        }
+    }
+
+    // Draw a char SUPERSAMPLING times bigger than the pixels specified and count the rendered
+    // pixels left blank in every pixel
+    private static byte[] coverageOf(char c, int pixels, String fontName) {
+        return coverageOf(render(c, pixels * SUPERSAMPLING, fontName));
+    }
+
+    // Count the pixels left blank in every SUPERSAMPLING x SUPERSAMPLING square of an image
+    private static byte[] coverageOf(boolean[][] img) {
+        int pixels = img.length / SUPERSAMPLING;
+        byte[] coverage = new byte[pixels * pixels];
+        for (int y = 0; y < img.length; y++) {
+            for (int x = 0; x < img[y].length; x++) {
+                if (img[y][x]) {
+                    coverage[(y / SUPERSAMPLING) * pixels + x / SUPERSAMPLING]++;
+                }
+            }
+        }
+        return coverage;
+    }
+
     private static boolean[][] render(char c, int pixels, String fontName) {
         String charStr = Character.toString(c);
         Font font = new Font(fontName, Font.PLAIN, pixels);
@@ -42,6 +292,13 @@ public class CharRenderer {
         return matrix;
     }
 
+    // Drawn chars of every font by (pixels << 16) | char - black and white images, and coverage maps
+    // of pixels counted by coverageOf
+    private static final class Chars {
+        private final Map<String, Map<Integer, boolean[][]>> glyphs = new ConcurrentHashMap<>();
+        private final Map<String, Map<Integer, byte[]>> coverages = new ConcurrentHashMap<>();
+    }
+
     //for debugging
     public static void printBoolArr(boolean[][] arr) {
         for (boolean[] booleans : arr) {
@@ -0,0 +1,119 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+
+/**
+ * A set of chars prepared for matching: sorted by brightness, linearly stretched to [0, 1],
+ * and searched by binary search. Immutable.
+ * When two chars are equally close to a brightness the darker one is chosen, and out of chars
+ * with the same brightness the one with the lowest code is chosen, so the result does not depend
+ * on the order the chars were given in.
+ */
+class CompiledCharSet implements BrightnessLevels {
+    private final char[] chars;
+    private final float[] brightness;
+    private final float[] brightnessByChar =
+            new float[CharBrightnessTable.LAST_CHAR - CharBrightnessTable.FIRST_CHAR + 1];
+
+    /**
+     * Constructor - sort the chars by brightness, dropping chars that can never be chosen
+     * (same brightness as a lower char), and do a linear stretch to their brightness
+     *
+     * @param allCharsBrightness The brightness of the chars of the font
+     * @param charSet            The set of wanted chars to use
+     */
+    CompiledCharSet(CharBrightnessTable allCharsBrightness, Character[] charSet) {
+        char[] sortedChars = allCharsBrightness.sortedByBrightness(charSet);
+        char[] chars = new char[sortedChars.length];
+        float[] brightness = new float[sortedChars.length];
+        int count = 0;
+        for (char ch : sortedChars) {
+            float charBrightness = allCharsBrightness.brightnessOf(ch);
+            if (count == 0 || brightness[count - 1] < charBrightness) {
+                chars[count] = ch;
+                brightness[count] = charBrightness;
+                count++;
+            }
+        }
+
+        float minBrightness = 0, maxBrightness = 0;
+        if (count != 0) {
+            minBrightness = brightness[0];
+            maxBrightness = brightness[count - 1];
+        }
+        for (int i = 0; i < count; i++) {
+            brightness[i] = count == 1 ? 0 : (brightness[i] - minBrightness) / (maxBrightness - minBrightness);
+        }
+        this.chars = Arrays.copyOf(chars, count);
+        this.brightness = Arrays.copyOf(brightness, count);
+        for (char ch : sortedChars) {
+            this.brightnessByChar[ch - CharBrightnessTable.FIRST_CHAR] = count <= 1 ? 0 :
+                    (allCharsBrightness.brightnessOf(ch) - minBrightness) / (maxBrightness - minBrightness);
+        }
+    }
+
+    @Override
+    public int levels() {
+        return this.chars.length;
+    }
+
+    @Override
+    public float brightnessOf(char ch) {
+        return this.brightnessByChar[ch - CharBrightnessTable.FIRST_CHAR];
+    }
+
+    @Override
+    public float levelBelow(float brightness) {
+        if (this.brightness.length == 0) {
+            return brightness;
+        }
+        return this.brightness[Math.max(0, indexAbove(brightness) - 1)];
+    }
+
+    @Override
+    public float levelAbove(float brightness) {
+        if (this.brightness.length == 0) {
+            return brightness;
+        }
+        return this.brightness[Math.min(this.brightness.length - 1, indexAbove(brightness))];
+    }
+
+    /**
+     * Get an Image brightness and return the char which his brightness closest
+     *
+     * @param imgBrightness brightness between 0 and 1
+     * @return the closest char, space if the set is empty
+     */
+    char closestCharTo(float imgBrightness) {
+        if (this.chars.length == 0) {
+            return ' ';
+        }
+        int low = 0, high = this.chars.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.brightness[mid] < imgBrightness) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (0 < low && imgBrightness - this.brightness[low - 1] <= this.brightness[low] - imgBrightness) {
+            return this.chars[low - 1];
+        }
+        return this.chars[low];
+    }
+
+    // The index of the lowest level above the brightness, the number of levels when there is none
+    private int indexAbove(float brightness) {
+        int low = 0, high = this.brightness.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.brightness[mid] <= brightness) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
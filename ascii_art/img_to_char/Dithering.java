@@ -0,0 +1,26 @@
+package ascii_art.img_to_char;
+
+/**
+ * How the brightness lost to matching a cell to the closest char is made up for, so that gradients
+ * of the image do not turn into bands of a single char.
+ */
+public enum Dithering {
+    /**
+     * Every cell gets the char closest to its brightness
+     */
+    NONE,
+
+    /**
+     * Floyd-Steinberg error diffusion: the difference of a cell brightness and of its char is spread
+     * to the cells right of it and below it. Rows are matched one after the other on the calling
+     * thread, keeping only the errors of the current row and of the next one.
+     */
+    DIFFUSION,
+
+    /**
+     * Ordered dithering: the brightness of every cell is offset by a 4x4 Bayer matrix, scaled to the
+     * gap between the two char levels around it. Cells are independent, so rows are matched in
+     * parallel as usual.
+     */
+    ORDERED
+}
@@ -0,0 +1,140 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+import java.util.Arrays;
+
+/**
+ * Matches chars to the frames of an animation, recomputing only the cells whose pixels changed
+ * since the previous frame. Every frame gets one cheap pass computing a checksum of the packed
+ * pixels of each cell; only cells whose checksum differs from the previous frame have their
+ * brightness computed and a char matched. A change that keeps the checksum of a cell is missed,
+ * which for a 64 bit checksum is not expected to happen in practice.
+ * Cells are matched one by one as BrightnessImgCharMatcher matches them without dithering - the
+ * mean grey level of the cell and the closest char of a CompiledCharSet - but not through it, as it
+ * matches whole grids read from the pyramid of one image. So frames get no workers, dithering,
+ * shape matching or colors: those need every cell of the grid, or its neighbours, at every frame.
+ * No memory is allocated between frames of the same dimensions.
+ */
+public class FrameDeltaMatcher {
+    private static final long CHECKSUM_SEED = 0xcbf29ce484222325L;
+    private static final long CHECKSUM_PRIME = 0x100000001b3L;
+
+    private final CompiledCharSet charsToUse;
+    private final int numCharsInRow;
+
+    private int width = -1;
+    private int height = -1;
+    private long[] checksums;
+    private long[] nextChecksums;
+    private boolean[] changed;
+    private int changedCount;
+    private char[][] asciiArt;
+    private int[] frameRow;
+    private int[] cellRow;
+
+    /**
+     * Constructor
+     *
+     * @param allCharsBrightness The brightness of the chars of the font to use
+     * @param numCharsInRow      chars per row
+     * @param charSet            The set of wanted chars to use
+     */
+    public FrameDeltaMatcher(CharBrightnessTable allCharsBrightness, int numCharsInRow, Character[] charSet) {
+        this.charsToUse = new CompiledCharSet(allCharsBrightness, charSet);
+        this.numCharsInRow = numCharsInRow;
+    }
+
+    /**
+     * Match the chars of the next frame. A frame of other dimensions than the previous one is
+     * matched whole.
+     *
+     * @param frame the next frame
+     * @return An image represented by chars - the same array for all the frames of the same
+     * dimensions, updated in place
+     */
+    public char[][] nextFrame(Image frame) {
+        int pixels = frame.getWidth() / this.numCharsInRow;
+        if (pixels == 0) {
+            throw new IllegalArgumentException("More chars in a row than pixels");
+        }
+        int rows = frame.getHeight() / pixels;
+        boolean reset = frame.getWidth() != this.width || frame.getHeight() != this.height;
+        if (reset) {
+            this.width = frame.getWidth();
+            this.height = frame.getHeight();
+            this.checksums = new long[rows * this.numCharsInRow];
+            this.nextChecksums = new long[rows * this.numCharsInRow];
+            this.changed = new boolean[rows * this.numCharsInRow];
+            this.asciiArt = new char[rows][this.numCharsInRow];
+            this.frameRow = new int[this.numCharsInRow * pixels];
+            this.cellRow = new int[pixels];
+        }
+
+        computeChecksums(frame, pixels, rows);
+        this.changedCount = 0;
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < this.numCharsInRow; x++) {
+                int cell = y * this.numCharsInRow + x;
+                this.changed[cell] = false;
+                if (!reset && this.nextChecksums[cell] == this.checksums[cell]) {
+                    continue;
+                }
+                char ch = this.charsToUse.closestCharTo(cellBrightness(frame, x * pixels, y * pixels, pixels));
+                if (reset || ch != this.asciiArt[y][x]) {
+                    this.asciiArt[y][x] = ch;
+                    this.changed[cell] = true;
+                    this.changedCount++;
+                }
+            }
+        }
+        long[] previous = this.checksums;
+        this.checksums = this.nextChecksums;
+        this.nextChecksums = previous;
+        return this.asciiArt;
+    }
+
+    /**
+     * @param row row of the cell
+     * @param col column of the cell
+     * @return whether the char of the cell changed in the last frame
+     */
+    public boolean isChanged(int row, int col) {
+        return this.changed[row * this.numCharsInRow + col];
+    }
+
+    /**
+     * @return how many chars changed in the last frame
+     */
+    public int changedCells() {
+        return this.changedCount;
+    }
+
+    // One pass over the frame rows, hashing the pixels of every cell
+    private void computeChecksums(Image frame, int pixels, int rows) {
+        Arrays.fill(this.nextChecksums, CHECKSUM_SEED);
+        int[] rgbRow = this.frameRow;
+        for (int y = 0; y < rows * pixels; y++) {
+            frame.getRgbRow(0, y, rgbRow.length, rgbRow, 0);
+            int rowStart = (y / pixels) * this.numCharsInRow;
+            for (int x = 0; x < this.numCharsInRow; x++) {
+                long checksum = this.nextChecksums[rowStart + x];
+                for (int i = x * pixels; i < (x + 1) * pixels; i++) {
+                    checksum = (checksum ^ rgbRow[i]) * CHECKSUM_PRIME;
+                }
+                this.nextChecksums[rowStart + x] = checksum;
+            }
+        }
+    }
+
+    // Mean brightness of one cell of the frame
+    private float cellBrightness(Image frame, int left, int top, int pixels) {
+        int[] rgbRow = this.cellRow;
+        double sum = 0;
+        for (int y = top; y < top + pixels; y++) {
+            frame.getRgbRow(left, y, pixels, rgbRow, 0);
+            sum += GreyLevels.INSTANCE.sumOf(rgbRow, 0, pixels);
+        }
+        return (float) (sum / ((double) pixels * pixels * BrightnessImgCharMatcher.MAX_COLOR));
+    }
+}
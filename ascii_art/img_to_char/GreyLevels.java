@@ -0,0 +1,81 @@
+package ascii_art.img_to_char;
+
+import java.util.logging.Logger;
+
+/**
+ * Grey levels of runs of packed ARGB pixels, the innermost loop of computing brightness.
+ * INSTANCE uses the Vector API when the jdk.incubator.vector module is loaded (java
+ * --add-modules jdk.incubator.vector) and the ascii_art.vector system property is not false, and
+ * the scalar loop of greyLevelOf otherwise. GreyLevelsTest checks the two kernels agree.
+ */
+interface GreyLevels {
+    /**
+     * The kernel to use
+     */
+    GreyLevels INSTANCE = Selection.select();
+
+    /**
+     * Grey level of every pixel of a run, as greyLevelOf
+     *
+     * @param rgb  packed ARGB pixels
+     * @param from first pixel of the run
+     * @param to   pixel after the run
+     * @param grey where the grey level of rgb[i] is put at grey[i]
+     */
+    void greyLevelsOf(int[] rgb, int from, int to, double[] grey);
+
+    /**
+     * Sum of the grey levels of a run of pixels, as greyLevelOf
+     *
+     * @param rgb  packed ARGB pixels
+     * @param from first pixel of the run
+     * @param to   pixel after the run
+     * @return the sum, between 0 and (to - from) * MAX_COLOR
+     */
+    double sumOf(int[] rgb, int from, int to);
+
+    /**
+     * The plain loop over greyLevelOf
+     */
+    class Scalar implements GreyLevels {
+        @Override
+        public void greyLevelsOf(int[] rgb, int from, int to, double[] grey) {
+            for (int i = from; i < to; i++) {
+                grey[i] = BrightnessImgCharMatcher.greyLevelOf(rgb[i]);
+            }
+        }
+
+        @Override
+        public double sumOf(int[] rgb, int from, int to) {
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += BrightnessImgCharMatcher.greyLevelOf(rgb[i]);
+            }
+            return sum;
+        }
+    }
+
+    // The choice of INSTANCE
+    final class Selection {
+        private static final String VECTOR_PROPERTY = "ascii_art.vector";
+        private static final String VECTOR_MODULE = "jdk.incubator.vector";
+        private static final String VECTOR_CLASS = "ascii_art.img_to_char.VectorGreyLevels";
+
+        private Selection() {
+        }
+
+        // The vector kernel if it can be loaded, the scalar one otherwise
+        private static GreyLevels select() {
+            if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true")) ||
+                    ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+                return new Scalar();
+            }
+            try {
+                return (GreyLevels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                Logger.getGlobal().warning("Vector grey levels not available: " + e);
+                return new Scalar();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ascii_art.img_to_char;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Matches chars to the cells of an image. Implementations differ in what of a cell they compare
+ * to the chars - BrightnessImgCharMatcher its brightness alone, ShapeImgCharMatcher the brightness
+ * of its parts, which keeps edges.
+ */
+public interface ImgCharMatcher {
+    /**
+     * Match a char to every square cell of the image
+     *
+     * @param numCharsInRow chars per row
+     * @param charSet       The set of wanted chars to use
+     * @return An image represented by chars
+     */
+    char[][] chooseChars(int numCharsInRow, Character[] charSet);
+
+    /**
+     * Same as chooseChars with square cells, but each cell is cellAspect times higher than it is
+     * wide. numCharsInRow need not divide the image width.
+     *
+     * @param numCharsInRow chars per row
+     * @param charSet       The set of wanted chars to use
+     * @param cellAspect    cell height divided by cell width
+     * @return An image represented by chars, as many rows as whole cells fit in the image height
+     */
+    char[][] chooseChars(int numCharsInRow, Character[] charSet, double cellAspect);
+
+    /**
+     * Same as chooseChars, but every row is handed over as soon as it is matched, in order and on
+     * the calling thread. The rows must not be changed.
+     *
+     * @param numCharsInRow chars per row
+     * @param charSet       The set of wanted chars to use
+     * @param cellAspect    cell height divided by cell width
+     * @param rowSink       Takes every row of chars along with its index
+     */
+    void chooseChars(int numCharsInRow, Character[] charSet, double cellAspect, ObjIntConsumer<char[]> rowSink);
+
+    /**
+     * The mean color of each cell of chooseChars with the same arguments
+     *
+     * @param numCharsInRow chars per row
+     * @param cellAspect    cell height divided by cell width
+     * @return packed RGB of every cell, same size as the chars chooseChars returns
+     */
+    int[][] chooseColors(int numCharsInRow, double cellAspect);
+
+    /**
+     * Same as chooseColors with square cells
+     *
+     * @param numCharsInRow chars per row
+     * @return packed RGB of every cell, same size as the chars chooseChars returns
+     */
+    int[][] chooseColors(int numCharsInRow);
+
+    /**
+     * Set whether the cells color is kept along with the cells, so that chooseColors reuses the
+     * pass over the image of chooseChars
+     *
+     * @param colored whether colored output is wanted
+     */
+    void setColored(boolean colored);
+
+    /**
+     * Set how the brightness lost to matching cells is made up for, see Dithering
+     *
+     * @param dithering the dithering of the next chooseChars calls
+     */
+    void setDithering(Dithering dithering);
+
+    /**
+     * Set how many threads match the rows. The output does not depend on this value.
+     *
+     * @param workers number of worker threads, 1 for matching on the calling thread
+     */
+    void setWorkers(int workers);
+
+    /**
+     * Read the cells of the given resolution ahead of chooseChars
+     *
+     * @param numCharsInRow chars per row
+     */
+    void prepare(int numCharsInRow);
+
+    /**
+     * Forget the ascii art kept from earlier calls but keep the cells of the image, so the next
+     * chooseChars matches every cell again without another pass over the image
+     */
+    void forgetAsciiArt();
+
+    /**
+     * Release what is kept of the image and of earlier calls, it is rebuilt by the next chooseChars
+     */
+    void release();
+}
@@ -0,0 +1,32 @@
+package ascii_art.img_to_char;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the prebuilt chars resource of CharRenderer, run by the build once the classes are compiled:
+ * java ascii_art.img_to_char.PrebuiltGlyphs resourceFile font...
+ * Fonts not installed on the build machine are left out with a warning.
+ */
+public class PrebuiltGlyphs {
+    /**
+     * @param args the resource file, then the fonts to draw
+     * @throws IOException if the file could not be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("USAGE: java ascii_art.img_to_char.PrebuiltGlyphs <resourceFile> <font>...");
+            return;
+        }
+        File resource = new File(args[0]);
+        if (resource.getParentFile() != null) {
+            resource.getParentFile().mkdirs();
+        }
+        String[] fontNames = new String[args.length - 1];
+        System.arraycopy(args, 1, fontNames, 0, fontNames.length);
+        List<String> drawn = CharRenderer.savePrebuilt(resource.getPath(),
+                BrightnessImgCharMatcher.CHAR_RESOLUTION, fontNames);
+        System.err.println("Prebuilt the chars of " + (drawn.isEmpty() ? "no font" : String.join(", ", drawn)));
+    }
+}
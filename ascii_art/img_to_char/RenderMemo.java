@@ -0,0 +1,175 @@
+package ascii_art.img_to_char;
+
+import metrics.CacheKind;
+import metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Finished ascii art grids and compiled char sets of a matcher, kept so that going back to a
+ * resolution and char set rendered before costs no matching. A char set is known by its canonical
+ * form - its distinct chars in order - so the order the chars were given in does not matter.
+ * Grids are evicted least recently used first once they hold more than MAX_GRID_CHARS chars,
+ * compiled char sets are small and bounded by their number.
+ * Safe for use by several threads at once: looking up grids and char sets takes no lock, only
+ * keeping a grid does, and a grid is stamped with the time it was last used instead of being moved
+ * in a list, so lookups do not contend.
+ *
+ * @param <S> the compiled char set of the matcher
+ */
+class RenderMemo<S> {
+    private static final long MAX_GRID_CHARS = 1L << 22;
+    private static final int MAX_CHAR_SETS = 64;
+
+    private final ConcurrentHashMap<String, KeptGrid> grids = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, S> charSets = new ConcurrentHashMap<>();
+    private long gridChars = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // A kept grid and the last time it was used
+    private static class KeptGrid {
+        private final char[][] grid;
+        private final long chars;
+        private volatile long lastUse = System.nanoTime();
+
+        private KeptGrid(char[][] grid, long chars) {
+            this.grid = grid;
+            this.chars = chars;
+        }
+    }
+
+    /**
+     * @param charSet a set of chars, in any order and possibly with repeats
+     * @return the distinct chars of the set in order
+     */
+    static String canonicalOf(Character[] charSet) {
+        char[] chars = new char[charSet.length];
+        for (int i = 0; i < charSet.length; i++) {
+            chars[i] = charSet[i];
+        }
+        Arrays.sort(chars);
+        StringBuilder canonical = new StringBuilder(chars.length);
+        for (int i = 0; i < chars.length; i++) {
+            if (i == 0 || chars[i] != chars[i - 1]) {
+                canonical.append(chars[i]);
+            }
+        }
+        return canonical.toString();
+    }
+
+    /**
+     * The compiled char set of a canonical char set, compiled on first use
+     *
+     * @param canonical the canonical form of the char set
+     * @param compiler  compiles the char set
+     * @return the compiled char set
+     */
+    S charSetOf(String canonical, Supplier<S> compiler) {
+        S charSet = this.charSets.get(canonical);
+        if (charSet != null) {
+            return charSet;
+        }
+        charSet = this.charSets.computeIfAbsent(canonical, key -> compiler.get());
+        // any other char set makes room, they are cheap to compile again
+        for (String key : this.charSets.keySet()) {
+            if (this.charSets.size() <= MAX_CHAR_SETS) {
+                break;
+            }
+            if (!key.equals(canonical)) {
+                this.charSets.remove(key);
+            }
+        }
+        return charSet;
+    }
+
+    /**
+     * The grid rendered before with the same arguments, counted as a hit or a miss
+     *
+     * @param numCharsInRow chars per row
+     * @param cellAspect    cell height divided by cell width
+     * @param canonical     the canonical char set
+     * @param dithering     the dithering of the grid
+     * @return the grid, or null if there is none - it must not be changed
+     */
+    char[][] gridOf(int numCharsInRow, double cellAspect, String canonical, Dithering dithering) {
+        KeptGrid kept = this.grids.get(keyOf(numCharsInRow, cellAspect, canonical, dithering));
+        if (kept == null) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+            kept.lastUse = System.nanoTime();
+        }
+        Metrics.cache(CacheKind.RENDERS).count(kept != null);
+        return kept == null ? null : kept.grid;
+    }
+
+    /**
+     * Keep a rendered grid, evicting the least recently used grids beyond MAX_GRID_CHARS.
+     * Grids bigger than that on their own are not kept.
+     *
+     * @param numCharsInRow chars per row
+     * @param cellAspect    cell height divided by cell width
+     * @param canonical     the canonical char set
+     * @param dithering     the dithering of the grid
+     * @param grid          the rendered grid, which must not be changed afterwards
+     */
+    synchronized void putGrid(int numCharsInRow, double cellAspect, String canonical, Dithering dithering,
+                              char[][] grid) {
+        long chars = (long) grid.length * numCharsInRow;
+        if (chars > MAX_GRID_CHARS) {
+            return;
+        }
+        KeptGrid previous = this.grids.put(keyOf(numCharsInRow, cellAspect, canonical, dithering),
+                new KeptGrid(grid, chars));
+        this.gridChars += chars - (previous == null ? 0 : previous.chars);
+        while (this.gridChars > MAX_GRID_CHARS) {
+            Map.Entry<String, KeptGrid> eldest = null;
+            for (Map.Entry<String, KeptGrid> entry : this.grids.entrySet()) {
+                if (eldest == null || entry.getValue().lastUse - eldest.getValue().lastUse < 0) {
+                    eldest = entry;
+                }
+            }
+            this.grids.remove(eldest.getKey());
+            this.gridChars -= eldest.getValue().chars;
+        }
+    }
+
+    /**
+     * Drop all the grids, the counters are kept
+     */
+    synchronized void clearGrids() {
+        this.grids.clear();
+        this.gridChars = 0;
+    }
+
+    /**
+     * @return number of chars in the kept grids
+     */
+    synchronized long gridChars() {
+        return this.gridChars;
+    }
+
+    /**
+     * @return number of grids found by gridOf
+     */
+    long hits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return number of grids not found by gridOf
+     */
+    long misses() {
+        return this.misses.sum();
+    }
+
+    // The key of a grid
+    private static String keyOf(int numCharsInRow, double cellAspect, String canonical, Dithering dithering) {
+        return numCharsInRow + ":" + cellAspect + ":" + dithering + ":" + canonical;
+    }
+}
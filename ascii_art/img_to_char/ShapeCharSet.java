@@ -0,0 +1,186 @@
+package ascii_art.img_to_char;
+
+/**
+ * A set of chars prepared for matching by shape: every char is cut into SHAPE_RESOLUTION x
+ * SHAPE_RESOLUTION parts, and so is every cell. The distance of a cell to a char is PARTS times the
+ * difference of their brightness, stretched like CompiledCharSet does, plus STRUCTURE_WEIGHT times
+ * the sum of the differences of their parts once each is taken off its own mean brightness - the
+ * first keeps the tone of the image, the second its edges.
+ * Since the distance is at least its brightness term, chars are tried from the closest brightness
+ * outwards and the search stops once no char left can be closer. A char is also passed over when
+ * the sums of the differences of the parts of the char and of the cell from their means are too far
+ * apart, since the shape term is at least their difference.
+ * Ties go to the darker char and then to the lowest code, so the result does not depend on the
+ * order the chars were given in. Immutable.
+ */
+class ShapeCharSet implements BrightnessLevels {
+    /**
+     * Parts in a row and in a column of a char
+     */
+    static final int SHAPE_RESOLUTION = 4;
+
+    /**
+     * Parts of a char
+     */
+    static final int PARTS = SHAPE_RESOLUTION * SHAPE_RESOLUTION;
+
+    // How much the shape counts against the brightness
+    private static final float STRUCTURE_WEIGHT = 0.5f;
+
+    // Leeway of giving up on a char, so that rounding never gives up on a char tied with the best
+    private static final float LIMIT_SLACK = 1e-3f;
+
+    private final char[] chars;
+    private final float[] brightness;
+    private final float[] parts;
+    private final float[] shapeNorms;
+    private final CompiledCharSet byBrightness;
+
+    /**
+     * Constructor - sort the chars by brightness, stretch it, and cut their brightness maps into parts
+     *
+     * @param allCharsBrightness The brightness of the chars of the font
+     * @param charSet            The set of wanted chars to use
+     */
+    ShapeCharSet(CharBrightnessTable allCharsBrightness, Character[] charSet) {
+        char[] sortedChars = allCharsBrightness.sortedByBrightness(charSet);
+        float minBrightness = 0, range = 1;
+        if (sortedChars.length != 0) {
+            minBrightness = allCharsBrightness.brightnessOf(sortedChars[0]);
+            float maxBrightness = allCharsBrightness.brightnessOf(sortedChars[sortedChars.length - 1]);
+            range = maxBrightness == minBrightness ? 1 : maxBrightness - minBrightness;
+        }
+
+        this.chars = new char[sortedChars.length];
+        this.brightness = new float[sortedChars.length];
+        this.parts = new float[sortedChars.length * PARTS];
+        this.shapeNorms = new float[sortedChars.length];
+        this.byBrightness = new CompiledCharSet(allCharsBrightness, charSet);
+        for (int i = 0; i < sortedChars.length; i++) {
+            this.chars[i] = sortedChars[i];
+            partsOf(allCharsBrightness.brightnessMapOf(sortedChars[i]), this.parts, i * PARTS);
+            float sum = 0;
+            for (int part = i * PARTS; part < (i + 1) * PARTS; part++) {
+                sum += this.parts[part];
+            }
+            for (int part = i * PARTS; part < (i + 1) * PARTS; part++) {
+                this.parts[part] -= sum / PARTS;
+                this.shapeNorms[i] += Math.abs(this.parts[part]);
+            }
+            this.brightness[i] = (allCharsBrightness.brightnessOf(sortedChars[i]) - minBrightness) / range;
+        }
+    }
+
+    /**
+     * Get the brightness of the parts of a cell and return the char whose parts are closest
+     *
+     * @param cellParts brightness between 0 and 1 of the PARTS parts of the cell, row after row
+     * @param cellShape room for PARTS floats, overwritten with the shape of the cell
+     * @return the closest char, space if the set is empty
+     */
+    char closestCharTo(float[] cellParts, float[] cellShape) {
+        if (this.chars.length == 0) {
+            return ' ';
+        }
+        float sum = 0;
+        for (float part : cellParts) {
+            sum += part;
+        }
+        float cellBrightness = sum / PARTS;
+        float cellShapeNorm = 0;
+        for (int part = 0; part < PARTS; part++) {
+            cellShape[part] = cellParts[part] - cellBrightness;
+            cellShapeNorm += Math.abs(cellShape[part]);
+        }
+
+        int low = 0, high = this.chars.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.brightness[mid] < cellBrightness) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        // darker chars from below-1 down, brighter chars from above up
+        int below = low - 1, above = low, best = -1;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        while (true) {
+            float belowBound = below < 0 ? Float.POSITIVE_INFINITY :
+                    PARTS * (cellBrightness - this.brightness[below]);
+            float aboveBound = above >= this.chars.length ? Float.POSITIVE_INFINITY :
+                    PARTS * (this.brightness[above] - cellBrightness);
+            int candidate = belowBound <= aboveBound ? below-- : above++;
+            if (Math.min(belowBound, aboveBound) > bestDistance) {
+                return this.chars[best];
+            }
+            float distance = PARTS * Math.abs(cellBrightness - this.brightness[candidate]);
+            float limit = (bestDistance - distance) / STRUCTURE_WEIGHT + LIMIT_SLACK;
+            if (Math.abs(cellShapeNorm - this.shapeNorms[candidate]) > limit) {
+                continue;
+            }
+            distance += STRUCTURE_WEIGHT * shapeDistanceTo(candidate, cellShape, limit);
+            if (distance < bestDistance || (distance == bestDistance && candidate < best)) {
+                bestDistance = distance;
+                best = candidate;
+            }
+        }
+    }
+
+    @Override
+    public int levels() {
+        return this.byBrightness.levels();
+    }
+
+    @Override
+    public float brightnessOf(char ch) {
+        return this.byBrightness.brightnessOf(ch);
+    }
+
+    @Override
+    public float levelBelow(float brightness) {
+        return this.byBrightness.levelBelow(brightness);
+    }
+
+    @Override
+    public float levelAbove(float brightness) {
+        return this.byBrightness.levelAbove(brightness);
+    }
+
+    /**
+     * Get the brightness of a cell too small to have a shape and return the char whose brightness
+     * is closest, like CompiledCharSet does
+     *
+     * @param cellBrightness brightness between 0 and 1
+     * @return the closest char, space if the set is empty
+     */
+    char closestCharTo(float cellBrightness) {
+        return this.byBrightness.closestCharTo(cellBrightness);
+    }
+
+    // Sum of the differences of the parts of a char and of a cell, less their means - given up once
+    // it passes the given limit, as the char can not be chosen anyway
+    private float shapeDistanceTo(int charIndex, float[] cellShape, float limit) {
+        float distance = 0;
+        for (int part = 0, offset = charIndex * PARTS; part < PARTS; part++) {
+            distance += Math.abs(this.parts[offset + part] - cellShape[part]);
+            if (distance > limit) {
+                return Float.POSITIVE_INFINITY;
+            }
+        }
+        return distance;
+    }
+
+    // Mean brightness of the pixels of every part of a char, row after row
+    private static void partsOf(float[] brightnessMap, float[] parts, int offset) {
+        int pixels = BrightnessImgCharMatcher.CHAR_RESOLUTION, partPixels = pixels / SHAPE_RESOLUTION;
+        for (int y = 0; y < pixels; y++) {
+            for (int x = 0; x < pixels; x++) {
+                parts[offset + (y / partPixels) * SHAPE_RESOLUTION + x / partPixels] += brightnessMap[y * pixels + x];
+            }
+        }
+        for (int part = offset; part < offset + PARTS; part++) {
+            parts[part] /= partPixels * partPixels;
+        }
+    }
+}
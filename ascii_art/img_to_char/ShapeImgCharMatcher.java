@@ -0,0 +1,93 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+/**
+ * Matches chars to the cells of an image by their shape instead of their brightness alone: every
+ * cell is read as a grid of SHAPE_RESOLUTION x SHAPE_RESOLUTION parts, and gets the char whose
+ * parts are closest in brightness, so edges and lines of the image are followed by the chars.
+ * A cell of even brightness gets a char of about the same brightness, like with
+ * BrightnessImgCharMatcher, and cells of less than SHAPE_RESOLUTION pixels, too small to have a
+ * shape, are matched by their brightness alone. See ShapeCharSet for how the chars are searched.
+ */
+public class ShapeImgCharMatcher extends CellGridMatcher<ShapeCharSet> {
+    private static final int SHAPE_RESOLUTION = ShapeCharSet.SHAPE_RESOLUTION;
+
+    /**
+     * Constructor
+     *
+     * @param img  The wanted image to ascii art
+     * @param font The font type to use
+     */
+    public ShapeImgCharMatcher(Image img, String font) {
+        this(img, new CharBrightnessTable(font));
+    }
+
+    /**
+     * Constructor sharing chars brightness that were already rendered
+     *
+     * @param img                The wanted image to ascii art
+     * @param allCharsBrightness The brightness of the chars of the font to use
+     */
+    public ShapeImgCharMatcher(Image img, CharBrightnessTable allCharsBrightness) {
+        super(img, allCharsBrightness);
+    }
+
+    @Override
+    ShapeCharSet compile(Character[] charSet) {
+        return new ShapeCharSet(this.allCharsBrightness, charSet);
+    }
+
+    // The brightness of every part of every cell - a grid SHAPE_RESOLUTION times finer in each axis.
+    // Parts of less than a pixel have no shape to follow, so cells that small are read whole.
+    @Override
+    float[] cellsOf(BrightnessPyramid pyramid, int cols, int rows, double cellWidth, double cellHeight) {
+        if (cellWidth < SHAPE_RESOLUTION || cellHeight < SHAPE_RESOLUTION) {
+            return pyramid.cellsOf(cols, rows, cellWidth, cellHeight);
+        }
+        return pyramid.cellsOf(cols * SHAPE_RESOLUTION, rows * SHAPE_RESOLUTION,
+                cellWidth / SHAPE_RESOLUTION, cellHeight / SHAPE_RESOLUTION);
+    }
+
+    // The parts of the cell and its shape, for every band
+    @Override
+    float[][] newScratch() {
+        return new float[2][ShapeCharSet.PARTS];
+    }
+
+    // The parts of every cell are gathered from the rows of the finer grid, and cells read whole are
+    // matched by their brightness alone. The offset shifts all the parts, so it keeps the shape.
+    @Override
+    char matchCell(ShapeCharSet charSet, float[] cells, int cols, int rows, int x, int y, float offset,
+                   float[][] scratch) {
+        if (cells.length == cols * rows) {
+            return charSet.closestCharTo(cells[y * cols + x] + offset);
+        }
+        float[] cellParts = scratch[0];
+        int partCols = cols * SHAPE_RESOLUTION;
+        for (int partY = 0; partY < SHAPE_RESOLUTION; partY++) {
+            int from = (y * SHAPE_RESOLUTION + partY) * partCols + x * SHAPE_RESOLUTION;
+            for (int partX = 0; partX < SHAPE_RESOLUTION; partX++) {
+                cellParts[partY * SHAPE_RESOLUTION + partX] = cells[from + partX] + offset;
+            }
+        }
+        return charSet.closestCharTo(cellParts, scratch[1]);
+    }
+
+    // The mean brightness of the parts
+    @Override
+    float cellBrightnessOf(float[] cells, int cols, int rows, int x, int y) {
+        if (cells.length == cols * rows) {
+            return cells[y * cols + x];
+        }
+        float sum = 0;
+        int partCols = cols * SHAPE_RESOLUTION;
+        for (int partY = 0; partY < SHAPE_RESOLUTION; partY++) {
+            int from = (y * SHAPE_RESOLUTION + partY) * partCols + x * SHAPE_RESOLUTION;
+            for (int partX = 0; partX < SHAPE_RESOLUTION; partX++) {
+                sum += cells[from + partX];
+            }
+        }
+        return sum / ShapeCharSet.PARTS;
+    }
+}
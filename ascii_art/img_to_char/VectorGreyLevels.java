@@ -0,0 +1,68 @@
+package ascii_art.img_to_char;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Grey levels computed with the Vector API, as many pixels at once as doubles fit in the widest
+ * vector of the CPU. The channels are unpacked in int lanes and weighted with the same precision
+ * and order as greyLevelOf - red in double lanes, green and blue in float lanes - so grey levels
+ * are exactly the scalar ones and sums differ only by the order they are added in.
+ * Only loaded by GreyLevels when the jdk.incubator.vector module is present.
+ */
+class VectorGreyLevels implements GreyLevels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.length() * Integer.SIZE));
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+
+    @Override
+    public void greyLevelsOf(int[] rgb, int from, int to, double[] grey) {
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+            greyOf(rgb, i).intoArray(grey, i);
+        }
+        for (; i < to; i++) {
+            grey[i] = BrightnessImgCharMatcher.greyLevelOf(rgb[i]);
+        }
+    }
+
+    @Override
+    public double sumOf(int[] rgb, int from, int to) {
+        DoubleVector sums = DoubleVector.zero(DOUBLES);
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+            sums = sums.add(greyOf(rgb, i));
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            sum += BrightnessImgCharMatcher.greyLevelOf(rgb[i]);
+        }
+        return sum;
+    }
+
+    // Grey levels of the pixels starting at i
+    private static DoubleVector greyOf(int[] rgb, int i) {
+        IntVector pixels = IntVector.fromArray(INTS, rgb, i);
+        DoubleVector red = (DoubleVector) channelOf(pixels, RED_SHIFT).convertShape(VectorOperators.I2D, DOUBLES, 0);
+        return red.mul(BrightnessImgCharMatcher.RED_RATE)
+                .add(weightedInFloats(channelOf(pixels, GREEN_SHIFT), BrightnessImgCharMatcher.GREEN_RATE))
+                .add(weightedInFloats(channelOf(pixels, 0), BrightnessImgCharMatcher.BLUE_RATE));
+    }
+
+    // A color channel of the pixels
+    private static IntVector channelOf(IntVector pixels, int shift) {
+        return pixels.lanewise(VectorOperators.LSHR, shift).and(BrightnessImgCharMatcher.MAX_COLOR);
+    }
+
+    // A color channel times a float rate, rounded to float as int times float is
+    private static DoubleVector weightedInFloats(IntVector channel, float rate) {
+        FloatVector levels = (FloatVector) channel.convert(VectorOperators.I2F, 0);
+        return (DoubleVector) levels.mul(rate).convertShape(VectorOperators.F2D, DOUBLES, 0);
+    }
+}
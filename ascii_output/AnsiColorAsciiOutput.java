@@ -0,0 +1,73 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+
+/**
+ * Prints colored ascii art to an ANSI terminal with 24 bit colors.
+ * A color is set only where it differs from the color of the previous char, so runs of the same
+ * color cost one escape sequence.
+ */
+public class AnsiColorAsciiOutput implements ColoredAsciiOutput {
+    private static final String SET_COLOR_FORMAT = "\033[38;2;%d;%d;%dm";
+    private static final String RESET_COLOR = "\033[0m";
+    private static final int NO_COLOR = -1;
+
+    private final PrintStream out;
+    private final ChannelTextWriter writer;
+    private int color = NO_COLOR;
+
+    /**
+     * Constructor printing to the console
+     */
+    public AnsiColorAsciiOutput() {
+        this(System.out);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param out The terminal to print to
+     */
+    public AnsiColorAsciiOutput(PrintStream out) {
+        this.out = out;
+        this.writer = new ChannelTextWriter(Channels.newChannel(out));
+    }
+
+    @Override
+    public void begin() {
+        this.out.flush();
+        this.color = NO_COLOR;
+    }
+
+    @Override
+    public void writeRow(char[] row, int[] colors) {
+        try {
+            for (int x = 0; x < row.length; x++) {
+                int rgb = colors[x] & 0xFFFFFF;
+                if (rgb != this.color) {
+                    this.writer.write(String.format(SET_COLOR_FORMAT, (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF,
+                            rgb & 0xFF));
+                    this.color = rgb;
+                }
+                this.writer.write(row[x]);
+            }
+            this.writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void end() {
+        try {
+            this.writer.write(RESET_COLOR);
+            this.writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.out.flush();
+    }
+}
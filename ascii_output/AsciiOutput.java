@@ -0,0 +1,41 @@
+package ascii_output;
+
+/**
+ * Output of ascii art, row after row.
+ * Rows can be written one at a time as they are produced, between begin and end. Errors of
+ * writing are thrown as UncheckedIOException.
+ */
+public interface AsciiOutput {
+    /**
+     * Start the output of ascii art
+     */
+    void begin();
+
+    /**
+     * Output the next row of chars, the row may be changed afterwards
+     *
+     * @param row the chars of the row
+     */
+    void writeRow(char[] row);
+
+    /**
+     * Finish the output of ascii art and release what it used
+     */
+    void end();
+
+    /**
+     * Output a whole ascii art
+     *
+     * @param chars The ascii art, row after row
+     */
+    default void output(char[][] chars) {
+        begin();
+        try {
+            for (char[] row : chars) {
+                writeRow(row);
+            }
+        } finally {
+            end();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ascii_output;
+
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A package-private class of the package ascii_output.
+ * Writes text as UTF-8 to a channel through a buffer, which is written to the channel only when
+ * full or when flushed, so rows of chars cost no system call of their own.
+ */
+class ChannelTextWriter implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final char MAX_SINGLE_BYTE_CHAR = 0x7F;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    /**
+     * Constructor
+     *
+     * @param channel The channel to write to
+     */
+    ChannelTextWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Write a char
+     *
+     * @param c the char
+     * @throws IOException if writing to the channel failed
+     */
+    void write(char c) throws IOException {
+        if (c <= MAX_SINGLE_BYTE_CHAR) {
+            if (!this.buffer.hasRemaining()) {
+                flush();
+            }
+            this.buffer.put((byte) c);
+            return;
+        }
+        byte[] bytes = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+        if (this.buffer.remaining() < bytes.length) {
+            flush();
+        }
+        this.buffer.put(bytes);
+    }
+
+    /**
+     * Write all the chars of a text
+     *
+     * @param text the text
+     * @throws IOException if writing to the channel failed
+     */
+    void write(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            write(text.charAt(i));
+        }
+    }
+
+    /**
+     * Write all the chars of an array
+     *
+     * @param chars the chars
+     * @throws IOException if writing to the channel failed
+     */
+    void write(char[] chars) throws IOException {
+        for (char c : chars) {
+            write(c);
+        }
+    }
+
+    /**
+     * Write everything buffered to the channel
+     *
+     * @throws IOException if writing to the channel failed
+     */
+    void flush() throws IOException {
+        this.buffer.flip();
+        int bytes = this.buffer.remaining();
+        if (bytes != 0) {
+            StageTimer timer = Metrics.start(Stage.OUTPUT);
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            timer.stop(bytes);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Write everything buffered and close the channel
+     *
+     * @throws IOException if writing to or closing the channel failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+}
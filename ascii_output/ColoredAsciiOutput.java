@@ -0,0 +1,43 @@
+package ascii_output;
+
+/**
+ * Output of ascii art in which every char has a color of its own, row after row.
+ * Rows can be written one at a time as they are produced, between begin and end. Errors of
+ * writing are thrown as UncheckedIOException.
+ */
+public interface ColoredAsciiOutput {
+    /**
+     * Start the output of ascii art
+     */
+    void begin();
+
+    /**
+     * Output the next row of chars, each in its color
+     *
+     * @param row    the chars of the row
+     * @param colors packed RGB of every char of the row
+     */
+    void writeRow(char[] row, int[] colors);
+
+    /**
+     * Finish the output of ascii art and release what it used
+     */
+    void end();
+
+    /**
+     * Output a whole ascii art
+     *
+     * @param chars  The ascii art, row after row
+     * @param colors Packed RGB of every char, same size as chars
+     */
+    default void output(char[][] chars, int[][] colors) {
+        begin();
+        try {
+            for (int y = 0; y < chars.length; y++) {
+                writeRow(chars[y], colors[y]);
+            }
+        } finally {
+            end();
+        }
+    }
+}
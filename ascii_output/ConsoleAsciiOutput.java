@@ -0,0 +1,56 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+
+/**
+ * Prints ascii art to the console, a line per row
+ */
+public class ConsoleAsciiOutput implements AsciiOutput {
+    private final PrintStream out;
+    private final ChannelTextWriter writer;
+
+    /**
+     * Constructor printing to the console
+     */
+    public ConsoleAsciiOutput() {
+        this(System.out);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param out The stream to print to
+     */
+    public ConsoleAsciiOutput(PrintStream out) {
+        this.out = out;
+        this.writer = new ChannelTextWriter(Channels.newChannel(out));
+    }
+
+    @Override
+    public void begin() {
+        this.out.flush();
+    }
+
+    @Override
+    public void writeRow(char[] row) {
+        try {
+            this.writer.write(row);
+            this.writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void end() {
+        try {
+            this.writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.out.flush();
+    }
+}
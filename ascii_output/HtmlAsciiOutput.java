@@ -0,0 +1,58 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes ascii art to an html file, a line per row
+ */
+public class HtmlAsciiOutput implements AsciiOutput {
+    private final String filename;
+    private final String fontName;
+    private ChannelTextWriter writer = null;
+
+    /**
+     * Constructor
+     *
+     * @param filename The html file to write
+     * @param fontName The font to show the chars in
+     */
+    public HtmlAsciiOutput(String filename, String fontName) {
+        this.filename = filename;
+        this.fontName = fontName;
+    }
+
+    @Override
+    public void begin() {
+        try {
+            this.writer = HtmlPage.open(this.filename, this.fontName);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeRow(char[] row) {
+        try {
+            for (char c : row) {
+                HtmlPage.writeChar(this.writer, c);
+            }
+            this.writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void end() {
+        if (this.writer == null) {
+            return;
+        }
+        try (ChannelTextWriter writer = this.writer) {
+            this.writer = null;
+            writer.write(HtmlPage.END);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes colored ascii art to an html file.
+ * Each run of chars of the same color, which may go on over the end of a row, is a single span.
+ */
+public class HtmlColorAsciiOutput implements ColoredAsciiOutput {
+    private static final String SPAN_START_FORMAT = "<span style=\"color:#%06x\">";
+    private static final String SPAN_END = "</span>";
+    private static final int NO_COLOR = -1;
+
+    private final String filename;
+    private final String fontName;
+    private ChannelTextWriter writer = null;
+    private int color = NO_COLOR;
+
+    /**
+     * Constructor
+     *
+     * @param filename The html file to write
+     * @param fontName The font to show the chars in
+     */
+    public HtmlColorAsciiOutput(String filename, String fontName) {
+        this.filename = filename;
+        this.fontName = fontName;
+    }
+
+    @Override
+    public void begin() {
+        this.color = NO_COLOR;
+        try {
+            this.writer = HtmlPage.open(this.filename, this.fontName);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeRow(char[] row, int[] colors) {
+        try {
+            for (int x = 0; x < row.length; x++) {
+                int rgb = colors[x] & 0xFFFFFF;
+                if (rgb != this.color) {
+                    if (this.color != NO_COLOR) {
+                        this.writer.write(SPAN_END);
+                    }
+                    this.writer.write(String.format(SPAN_START_FORMAT, rgb));
+                    this.color = rgb;
+                }
+                HtmlPage.writeChar(this.writer, row[x]);
+            }
+            this.writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void end() {
+        if (this.writer == null) {
+            return;
+        }
+        try (ChannelTextWriter writer = this.writer) {
+            this.writer = null;
+            if (this.color != NO_COLOR) {
+                writer.write(SPAN_END);
+            }
+            writer.write(HtmlPage.END);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A package-private class of the package ascii_output.
+ * The html around ascii art, and the chars of ascii art as html.
+ */
+final class HtmlPage {
+    private static final String START_FORMAT = "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n" +
+            "<title>ASCII Art</title>\n</head>\n<body style=\"background-color:white;\">\n" +
+            "<pre style=\"font-family:'%s'; font-size:8px; line-height:1em\">";
+
+    /**
+     * The html that closes the page
+     */
+    static final String END = "</pre>\n</body>\n</html>\n";
+
+    private HtmlPage() {
+    }
+
+    /**
+     * @param fontName The font to show the chars in
+     * @return the html that opens the page, up to the first char
+     */
+    static String start(String fontName) {
+        return String.format(START_FORMAT, fontName);
+    }
+
+    /**
+     * Open an html file and write the start of the page into it. The file is closed again if
+     * writing fails.
+     *
+     * @param filename The html file to write
+     * @param fontName The font to show the chars in
+     * @return the writer of the rest of the page
+     * @throws IOException if opening or writing the file failed
+     */
+    static ChannelTextWriter open(String filename, String fontName) throws IOException {
+        ChannelTextWriter writer = new ChannelTextWriter(FileChannel.open(Paths.get(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+        try {
+            writer.write(start(fontName));
+        } catch (IOException e) {
+            try {
+                writer.close();
+            } catch (IOException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw e;
+        }
+        return writer;
+    }
+
+    /**
+     * Write a char of the ascii art as html
+     *
+     * @param writer where to write
+     * @param c      the char
+     * @throws IOException if writing failed
+     */
+    static void writeChar(ChannelTextWriter writer, char c) throws IOException {
+        switch (c) {
+            case '<':
+                writer.write("&lt;");
+                break;
+            case '>':
+                writer.write("&gt;");
+                break;
+            case '&':
+                writer.write("&amp;");
+                break;
+            default:
+                writer.write(c);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package benchmarks;
+
+import ascii_art.img_to_char.CharBrightnessTable;
+import ascii_art.img_to_char.CharRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering chars - the cached path of CharRenderer.getImg, the supersampled brightness map of a
+ * char and the brightness table every matcher is built on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CharRendererBenchmark {
+    private static final String FONT_NAME = "Courier New";
+    private static final int CHAR_RESOLUTION = 16;
+
+    @Benchmark
+    public boolean[][] getImg() {
+        return CharRenderer.getImg('A', CHAR_RESOLUTION, FONT_NAME);
+    }
+
+    @Benchmark
+    public float[] getBrightnessMap() {
+        return CharRenderer.getBrightnessMap('A', CHAR_RESOLUTION, FONT_NAME);
+    }
+
+    @Benchmark
+    public CharBrightnessTable charBrightnessTable() {
+        return new CharBrightnessTable(FONT_NAME);
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.ImgCharMatcher;
+import ascii_art.img_to_char.ShapeImgCharMatcher;
+import image.Image;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * chooseChars of both matchers at several widths and charset sizes: answered by the ascii art kept
+ * from the call before, matching every cell of cells already read, and from scratch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ChooseCharsBenchmark {
+    private static final String FONT_NAME = "Courier New";
+
+    @Param({"512", "2048", "8192"})
+    public int size;
+
+    @Param({"64", "256"})
+    public int charsInRow;
+
+    @Param({"10", "95"})
+    public int charSetSize;
+
+    @Param({"brightness", "shape"})
+    public String matching;
+
+    private ImgCharMatcher matcher;
+    private Character[] charSet;
+
+    @Setup
+    public void setUp() throws IOException {
+        Image img = Image.fromFile(SyntheticImages.writePng(this.size));
+        this.matcher = this.matching.equals("shape") ? new ShapeImgCharMatcher(img, FONT_NAME) :
+                new BrightnessImgCharMatcher(img, FONT_NAME);
+        char first = this.charSetSize == 10 ? '0' : ' ';
+        this.charSet = IntStream.range(first, first + this.charSetSize)
+                .mapToObj(c -> (char) c).toArray(Character[]::new);
+    }
+
+    @Benchmark
+    public char[][] chooseChars() {
+        return this.matcher.chooseChars(this.charsInRow, this.charSet);
+    }
+
+    @Benchmark
+    public char[][] chooseCharsMatching() {
+        this.matcher.forgetAsciiArt();
+        return this.matcher.chooseChars(this.charsInRow, this.charSet);
+    }
+
+    @Benchmark
+    public char[][] chooseCharsCold() {
+        this.matcher.release();
+        return this.matcher.chooseChars(this.charsInRow, this.charSet);
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import image.Image;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading an image file and walking its pixels and sub-images.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ImageBenchmark {
+    private static final int CELLS_IN_ROW = 64;
+
+    @Param({"512", "2048", "8192"})
+    public int size;
+
+    private String filename;
+    private Image img;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.filename = SyntheticImages.writePng(this.size);
+        this.img = Image.fromFile(this.filename);
+    }
+
+    @Benchmark
+    public Image fileImageLoad() {
+        return Image.fromFile(this.filename);
+    }
+
+    @Benchmark
+    public void pixels(Blackhole blackhole) {
+        for (Color color : this.img.pixels()) {
+            blackhole.consume(color);
+        }
+    }
+
+    @Benchmark
+    public void squareSubImagesOfSize(Blackhole blackhole) {
+        for (Image subImage : this.img.squareSubImagesOfSize(this.size / CELLS_IN_ROW)) {
+            blackhole.consume(subImage);
+        }
+    }
+
+    @Benchmark
+    public void forEachSquareCell(Blackhole blackhole) {
+        this.img.forEachSquareCell(this.size / CELLS_IN_ROW, (cellX, cellY, x, y, cellSize) -> blackhole.consume(x));
+    }
+
+    @Benchmark
+    public void getRgbRow(Blackhole blackhole) {
+        int[] row = new int[this.size];
+        for (int y = 0; y < this.size; y++) {
+            this.img.getRgbRow(0, y, this.size, row, 0);
+            blackhole.consume(row);
+        }
+    }
+}
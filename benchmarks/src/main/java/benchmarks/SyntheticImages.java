@@ -0,0 +1,40 @@
+package benchmarks;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Writes the synthetic square images the benchmarks load - a gradient with noise, so neither
+ * the decoder nor the char matching sees a uniform image.
+ */
+final class SyntheticImages {
+    private static final long SEED = 1;
+
+    private SyntheticImages() {
+    }
+
+    /**
+     * Write a synthetic image to a temporary png file, deleted when the JVM exits
+     *
+     * @param size width and height in pixels
+     * @return the file path
+     * @throws IOException if the file could not be written
+     */
+    static String writePng(int size) throws IOException {
+        BufferedImage im = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(SEED);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int red = 255 * x / size, green = 255 * y / size, blue = random.nextInt(256);
+                im.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        File file = File.createTempFile("ascii-art-" + size + "-", ".png");
+        file.deleteOnExit();
+        ImageIO.write(im, "png", file);
+        return file.getPath();
+    }
+}
@@ -0,0 +1,19 @@
+package image;
+
+/**
+ * Callback of Image.forEachSquareCell, called once per cell with primitive arguments only,
+ * so traversing the cells of an image allocates nothing per cell.
+ */
+@FunctionalInterface
+public interface CellVisitor {
+    /**
+     * Visit one square cell of an image
+     *
+     * @param cellX column of the cell
+     * @param cellY row of the cell
+     * @param x     left pixel of the cell in the image
+     * @param y     top pixel of the cell in the image
+     * @param size  cell width and height in pixels
+     */
+    void visit(int cellX, int cellY, int x, int y, int size);
+}
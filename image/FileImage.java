@@ -1,13 +1,20 @@
 package image;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
 
 /**
  * A package-private class of the package image.
+ * The pixels are kept packed as ARGB ints in a single flat array (row after row),
+ * so no Color object is held per pixel.
  *
  * @author Dan Nirel
  */
@@ -15,7 +22,9 @@ class FileImage implements Image {
 
     private static final Color DEFAULT_COLOR = Color.WHITE;
 
-    private final Color[][] pixelArray;
+    private final int[] pixelArray;
+    private final int width;
+    private final int height;
 
     /**
      * Constructor of FileImage
@@ -24,28 +33,51 @@ class FileImage implements Image {
      * @throws IOException Exception to throw
      */
     FileImage(String filename) throws IOException {
-        java.awt.image.BufferedImage im = ImageIO.read(new File(filename));
+        this(read(filename), true);
+    }
+
+    /**
+     * Constructor of FileImage
+     *
+     * @param filename        Name of File
+     * @param padToPowerOfTwo Whether to pad each dimension with white margins to a power of 2
+     * @throws IOException Exception to throw
+     */
+    FileImage(String filename, boolean padToPowerOfTwo) throws IOException {
+        this(read(filename), padToPowerOfTwo);
+    }
+
+    /**
+     * Constructor of FileImage from the bytes of an image file, keeping its own dimensions
+     *
+     * @param bytes     Content of an image file
+     * @param maxPixels Images with more pixels are refused before they are decoded
+     * @throws IOException Exception to throw
+     */
+    FileImage(byte[] bytes, long maxPixels) throws IOException {
+        this(read(bytes, maxPixels), false);
+    }
+
+    /**
+     * Constructor of FileImage from an image already decoded
+     *
+     * @param im              The decoded image
+     * @param padToPowerOfTwo Whether to pad each dimension with white margins to a power of 2
+     */
+    FileImage(BufferedImage im, boolean padToPowerOfTwo) {
         int origWidth = im.getWidth(), origHeight = im.getHeight();
 
-        int newHeight = ceilPowerOfTwo(origHeight);
-        int newWidth = ceilPowerOfTwo(origWidth);
-        this.pixelArray = new Color[newHeight][newWidth];
-
-        float frameX = (newWidth - origWidth) / 2.0f;
-        float frameY = (newHeight - origHeight) / 2.0f;
-
-        for (int y = 0; y < pixelArray.length; y++) {
-            for (int x = 0; x < pixelArray[y].length; x++) {
-                //if this pixel is not in the margins, take value from image
-                if (x >= (int) Math.floor(frameX) && x < pixelArray[y].length - Math.ceil(frameX) &&
-                        y >= (int) Math.floor(frameY) && y < pixelArray.length - Math.ceil(frameY)) {
-                    pixelArray[y][x] = new Color(im.getRGB(
-                            x - (int) Math.floor(frameX),
-                            y - (int) Math.floor(frameY)));
-                } else {
-                    pixelArray[y][x] = DEFAULT_COLOR;
-                }
-            }
+        this.height = padToPowerOfTwo ? ceilPowerOfTwo(origHeight) : origHeight;
+        this.width = padToPowerOfTwo ? ceilPowerOfTwo(origWidth) : origWidth;
+        this.pixelArray = new int[this.width * this.height];
+        Arrays.fill(this.pixelArray, DEFAULT_COLOR.getRGB());
+
+        int frameX = (int) Math.floor((this.width - origWidth) / 2.0f);
+        int frameY = (int) Math.floor((this.height - origHeight) / 2.0f);
+
+        //copy the image rows straight into the packed array, leaving the margins white
+        for (int y = 0; y < origHeight; y++) {
+            im.getRGB(0, y, origWidth, 1, this.pixelArray, (y + frameY) * this.width + frameX, this.width);
         }
     }
 
@@ -53,7 +85,7 @@ class FileImage implements Image {
      * @return image pixels width
      */
     public int getWidth() {
-        return this.pixelArray[0].length;
+        return this.width;
     }
 
     /**
@@ -61,7 +93,7 @@ class FileImage implements Image {
      */
     @Override
     public int getHeight() {
-        return this.pixelArray.length;
+        return this.height;
     }
 
     /**
@@ -71,9 +103,68 @@ class FileImage implements Image {
      */
     @Override
     public Color getPixel(int x, int y) {
-        return this.pixelArray[y][x];
+        return new Color(getRgb(x, y));
     }
 
+    /**
+     * @param x coordinate (Represent Width)
+     * @param y coordinate (Represent Height)
+     * @return the packed ARGB value of pixel (x,y) of img
+     */
+    @Override
+    public int getRgb(int x, int y) {
+        if (x < 0 || x >= this.width || y < 0 || y >= this.height) {
+            return DEFAULT_COLOR.getRGB();
+        }
+        return this.pixelArray[y * this.width + x];
+    }
+
+    /**
+     * Copy consecutive pixels of a row, straight from the packed array. Pixels outside the image
+     * are white, like its margins.
+     */
+    @Override
+    public void getRgbRow(int x, int y, int length, int[] rgb, int offset) {
+        int from = Math.max(x, 0), to = Math.min(x + length, this.width);
+        if (y < 0 || y >= this.height || to <= from) {
+            Arrays.fill(rgb, offset, offset + length, DEFAULT_COLOR.getRGB());
+            return;
+        }
+        Arrays.fill(rgb, offset, offset + from - x, DEFAULT_COLOR.getRGB());
+        System.arraycopy(this.pixelArray, y * this.width + from, rgb, offset + from - x, to - from);
+        Arrays.fill(rgb, offset + to - x, offset + length, DEFAULT_COLOR.getRGB());
+    }
+
+
+    // Decode an image file, failing if no reader knows its format
+    private static BufferedImage read(String filename) throws IOException {
+        BufferedImage im = ImageIO.read(new File(filename));
+        if (im == null) {
+            throw new IOException("Unknown image format " + filename);
+        }
+        return im;
+    }
+
+    // Decode the bytes of an image file, failing if no reader knows its format or if it has too many
+    // pixels - the size is read from the header, so a small file of a huge image is never decoded
+    private static BufferedImage read(byte[] bytes, long maxPixels) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unknown image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > maxPixels) {
+                    throw new IOException("Image of more than " + maxPixels + " pixels");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
 
     // Find the greater and closes power of 2 to x
     private int ceilPowerOfTwo(int num) {
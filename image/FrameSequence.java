@@ -0,0 +1,263 @@
+package image;
+
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The frames of an animation - either the images of a multi-image file such as a GIF, or the
+ * image files of a directory sorted by name. Frames are decoded one at a time while iterating.
+ * GIF frames only cover the part of the screen that changed, so they are drawn over the previous
+ * frames at the position their metadata gives, after the previous frame is disposed of as its
+ * metadata asks - left as it is, cleared to the background, or restored to what was under it.
+ * A file stays open until it is iterated to its end or the sequence is closed.
+ */
+public class FrameSequence implements Iterable<Image>, AutoCloseable {
+    private static final Color BACKGROUND_COLOR = Color.WHITE;
+    private static final String GIF_STREAM_METADATA_FORMAT = "javax_imageio_gif_stream_1.0";
+    private static final String GIF_SCREEN = "LogicalScreenDescriptor";
+    private static final String GIF_SCREEN_WIDTH = "logicalScreenWidth";
+    private static final String GIF_SCREEN_HEIGHT = "logicalScreenHeight";
+    private static final String GIF_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String GIF_DESCRIPTOR = "ImageDescriptor";
+    private static final String GIF_LEFT = "imageLeftPosition";
+    private static final String GIF_TOP = "imageTopPosition";
+    private static final String GIF_CONTROL = "GraphicControlExtension";
+    private static final String GIF_DISPOSAL = "disposalMethod";
+    private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+    private static final String RESTORE_TO_PREVIOUS = "restoreToPrevious";
+
+    private final File path;
+    // The files of the iterators not iterated to their end yet
+    private final List<ImageInputStream> openInputs = new ArrayList<>();
+
+    /**
+     * Constructor
+     *
+     * @param path an animated image file or a directory of numbered image files
+     */
+    FrameSequence(String path) {
+        this.path = new File(path);
+    }
+
+    @Override
+    public Iterator<Image> iterator() {
+        if (this.path.isDirectory()) {
+            return directoryFrames();
+        }
+        return fileFrames();
+    }
+
+    /**
+     * Close the files of the iterators that were not iterated to their end
+     */
+    @Override
+    public void close() {
+        for (ImageInputStream input : this.openInputs) {
+            closeQuietly(input);
+        }
+        this.openInputs.clear();
+    }
+
+    // The frames of a directory, one file each
+    private Iterator<Image> directoryFrames() {
+        File[] files = this.path.listFiles(File::isFile);
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files);
+        Iterator<File> fileIterator = Arrays.asList(files).iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return fileIterator.hasNext();
+            }
+
+            @Override
+            public Image next() {
+                File file = fileIterator.next();
+                try {
+                    return new FileImage(file.getPath());
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }
+        };
+    }
+
+    // The frames of a multi-image file, drawn over each other on one canvas
+    private Iterator<Image> fileFrames() {
+        ImageInputStream input = null;
+        ImageReader reader;
+        int frames;
+        try {
+            input = ImageIO.createImageInputStream(this.path);
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("No image reader for " + this.path);
+            }
+            reader = readers.next();
+            reader.setInput(input, false, false);
+            frames = reader.getNumImages(true);
+        } catch (IOException ioe) {
+            closeQuietly(input);
+            throw new UncheckedIOException(ioe);
+        }
+        ImageInputStream openInput = input;
+        this.openInputs.add(openInput);
+
+        return new Iterator<>() {
+            int frame = 0;
+            BufferedImage canvas = null;
+            // How the last frame drawn is disposed of, where it was drawn, and what was under it
+            String disposal = null;
+            Rectangle area = null;
+            BufferedImage under = null;
+
+            @Override
+            public boolean hasNext() {
+                return this.frame < frames;
+            }
+
+            @Override
+            public Image next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                try {
+                    StageTimer timer = Metrics.start(Stage.DECODE);
+                    BufferedImage im = reader.read(this.frame);
+                    timer.stop((long) im.getWidth() * im.getHeight());
+                    IIOMetadata metadata = reader.getImageMetadata(this.frame);
+                    Point position = positionOf(metadata);
+                    if (this.canvas == null) {
+                        Dimension screen = screenSizeOf(reader.getStreamMetadata(),
+                                new Dimension(position.x + im.getWidth(), position.y + im.getHeight()));
+                        this.canvas = new BufferedImage(screen.width, screen.height, BufferedImage.TYPE_INT_RGB);
+                        Graphics g = this.canvas.getGraphics();
+                        g.setColor(BACKGROUND_COLOR);
+                        g.fillRect(0, 0, screen.width, screen.height);
+                        g.dispose();
+                    }
+                    disposeLastFrame();
+                    this.disposal = disposalOf(metadata);
+                    this.area = new Rectangle(position.x, position.y, im.getWidth(), im.getHeight())
+                            .intersection(new Rectangle(this.canvas.getWidth(), this.canvas.getHeight()));
+                    this.under = RESTORE_TO_PREVIOUS.equals(this.disposal) && !this.area.isEmpty() ?
+                            copyOf(this.canvas.getSubimage(this.area.x, this.area.y, this.area.width,
+                                    this.area.height)) : null;
+                    Graphics g = this.canvas.getGraphics();
+                    g.drawImage(im, position.x, position.y, null);
+                    g.dispose();
+                    this.frame++;
+                    if (!hasNext()) {
+                        reader.dispose();
+                        closeQuietly(openInput);
+                        FrameSequence.this.openInputs.remove(openInput);
+                    }
+                    return new FileImage(this.canvas, true);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }
+
+            // Clear the area of the last frame to the background, or restore what was under it,
+            // if its metadata asks to
+            private void disposeLastFrame() {
+                if (this.area == null || this.area.isEmpty()) {
+                    return;
+                }
+                Graphics g = this.canvas.getGraphics();
+                if (RESTORE_TO_BACKGROUND.equals(this.disposal)) {
+                    g.setColor(BACKGROUND_COLOR);
+                    g.fillRect(this.area.x, this.area.y, this.area.width, this.area.height);
+                } else if (this.under != null) {
+                    g.drawImage(this.under, this.area.x, this.area.y, null);
+                }
+                g.dispose();
+                this.under = null;
+            }
+        };
+    }
+
+    // A copy of an image, not sharing its pixels
+    private static BufferedImage copyOf(BufferedImage im) {
+        BufferedImage copy = new BufferedImage(im.getWidth(), im.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics g = copy.getGraphics();
+        g.drawImage(im, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+
+    // Close an image file, there is nothing more to read from it anyway
+    private static void closeQuietly(ImageInputStream input) {
+        if (input == null) {
+            return;
+        }
+        try {
+            input.close();
+        } catch (IOException ignored) {
+            // nothing was going to be read from it
+        }
+    }
+
+    // The size of the whole animation - the GIF logical screen, or the given size for other formats
+    private static Dimension screenSizeOf(IIOMetadata metadata, Dimension otherwise) {
+        if (metadata == null || !GIF_STREAM_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+            return otherwise;
+        }
+        Node root = metadata.getAsTree(GIF_STREAM_METADATA_FORMAT);
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeName().equals(GIF_SCREEN)) {
+                return new Dimension(
+                        Integer.parseInt(node.getAttributes().getNamedItem(GIF_SCREEN_WIDTH).getNodeValue()),
+                        Integer.parseInt(node.getAttributes().getNamedItem(GIF_SCREEN_HEIGHT).getNodeValue()));
+            }
+        }
+        return otherwise;
+    }
+
+    // How a GIF frame is disposed of before the next frame is drawn - null for other formats
+    private static String disposalOf(IIOMetadata metadata) {
+        if (metadata == null || !GIF_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+            return null;
+        }
+        Node root = metadata.getAsTree(GIF_METADATA_FORMAT);
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeName().equals(GIF_CONTROL)) {
+                return node.getAttributes().getNamedItem(GIF_DISPOSAL).getNodeValue();
+            }
+        }
+        return null;
+    }
+
+    // Where a frame is drawn on the canvas - (0, 0) unless it is a GIF frame with an offset
+    private static Point positionOf(IIOMetadata metadata) {
+        Point position = new Point(0, 0);
+        if (metadata == null || !GIF_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+            return position;
+        }
+        Node root = metadata.getAsTree(GIF_METADATA_FORMAT);
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeName().equals(GIF_DESCRIPTOR)) {
+                position.x = Integer.parseInt(node.getAttributes().getNamedItem(GIF_LEFT).getNodeValue());
+                position.y = Integer.parseInt(node.getAttributes().getNamedItem(GIF_TOP).getNodeValue());
+            }
+        }
+        return position;
+    }
+}
@@ -1,5 +1,9 @@
 package image;
 
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
 import java.awt.*;
 import java.io.IOException;
 
@@ -18,6 +22,33 @@ public interface Image {
      */
     Color getPixel(int x, int y);
 
+    /**
+     * Return the packed ARGB value of the pixel at given x,y coordinates.
+     * Unlike getPixel, implementations backed by primitive storage do not allocate.
+     *
+     * @param x the width axis
+     * @param y the height axis
+     * @return the coordinates color as 0xAARRGGBB
+     */
+    default int getRgb(int x, int y) {
+        return getPixel(x, y).getRGB();
+    }
+
+    /**
+     * Copy the packed ARGB values of consecutive pixels of a row into an array.
+     *
+     * @param x      the width axis of the first pixel
+     * @param y      the height axis of the row
+     * @param length number of pixels to copy
+     * @param rgb    the array to copy into
+     * @param offset where in the array to put the first pixel
+     */
+    default void getRgbRow(int x, int y, int length, int[] rgb, int offset) {
+        for (int i = 0; i < length; i++) {
+            rgb[offset + i] = getRgb(x + i, y);
+        }
+    }
+
     /**
      * @return Image width
      */
@@ -31,19 +62,119 @@ public interface Image {
     /**
      * Open an image from file. Each dimensions of the returned image is guaranteed
      * to be a power of 2, but the dimensions may be different.
+     * Very large images are held off the heap, see fromFileMapped.
      *
      * @param filename a path to an image file on disk
      * @return an object implementing Image if the operation was successful,
      * null otherwise
      */
     static Image fromFile(String filename) {
+        return open(filename, true);
+    }
+
+    /**
+     * Open an image from file keeping its own dimensions, without padding it to powers of 2.
+     * Very large images are held off the heap, see fromFileMapped.
+     *
+     * @param filename a path to an image file on disk
+     * @return an object implementing Image if the operation was successful,
+     * null otherwise
+     */
+    static Image fromFileNativeSize(String filename) {
+        return open(filename, false);
+    }
+
+    /**
+     * Open an image from file without decoding it - strips of rows are decoded when their pixels
+     * are read, so memory does not grow with the image size. Reading is fastest row after row.
+     * Each dimensions of the returned image is guaranteed to be a power of 2.
+     *
+     * @param filename    a path to an image file on disk
+     * @param subsampling keep one of every subsampling pixels in each axis, 1 to keep all
+     * @return an object implementing Image if the operation was successful,
+     * null otherwise
+     */
+    static Image fromFileStreamed(String filename, int subsampling) {
+        try {
+            return new StreamedImage(filename, subsampling, true);
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Open an image from file, keeping its pixels off the heap in a memory-mapped plane file. The
+     * image is decoded once into the plane file, in the directory given by the system property
+     * ascii_art.planes.dir or else the temporary directory, and opening it again while the image file
+     * is unchanged maps the same plane file without decoding. Reading is fastest row after row.
+     *
+     * @param filename        a path to an image file on disk
+     * @param padToPowerOfTwo whether to pad each dimension with white margins to a power of 2
+     * @return an object implementing Image if the operation was successful,
+     * null otherwise
+     */
+    static Image fromFileMapped(String filename, boolean padToPowerOfTwo) {
+        try {
+            return new MappedImage(filename, padToPowerOfTwo);
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Open an image from the content of an image file, keeping its own dimensions. Images too big
+     * to be held in memory are refused, since they can not be streamed from a file.
+     *
+     * @param bytes the content of an image file
+     * @return an object implementing Image if the operation was successful,
+     * null otherwise
+     */
+    static Image fromBytes(byte[] bytes) {
+        StageTimer timer = Metrics.start(Stage.DECODE);
         try {
-            return new FileImage(filename);
+            Image img = new FileImage(bytes, StreamedImage.MIN_STREAMED_PIXELS);
+            timer.stop((long) img.getWidth() * img.getHeight());
+            return img;
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    // Open an image from file - very large ones are mapped from their plane file, or streamed if the
+    // plane file can not be written
+    private static Image open(String filename, boolean padToPowerOfTwo) {
+        StageTimer timer = Metrics.start(Stage.DECODE);
+        try {
+            int[] size = StreamedImage.sizeOf(filename);
+            if ((long) size[0] * size[1] > StreamedImage.MIN_STREAMED_PIXELS) {
+                Image img = fromFileMapped(filename, padToPowerOfTwo);
+                if (img == null) {
+                    return new StreamedImage(filename, 1, padToPowerOfTwo);
+                }
+                timer.stop((long) size[0] * size[1]);
+                return img;
+            }
+            Image img = new FileImage(filename, padToPowerOfTwo);
+            timer.stop((long) size[0] * size[1]);
+            return img;
         } catch (IOException ioe) {
             return null;
         }
     }
 
+    /**
+     * Open the frames of an animation - the images of a multi-image file such as a GIF, or the
+     * image files of a directory by order of their names. Frames are decoded while iterating, and
+     * each has dimensions that are powers of 2 like fromFile. Close the sequence when done with it
+     * before its last frame.
+     *
+     * @param path a path to an animated image file or a directory of image files
+     * @return an Iterable of the frames, failing with UncheckedIOException if a frame can not be read
+     */
+    static FrameSequence framesOf(String path) {
+        return new FrameSequence(path);
+    }
+
     /**
      * Allows iterating the pixels' colors by order (first row, second row and so on).
      *
@@ -62,5 +193,20 @@ public interface Image {
     default Iterable<Image> squareSubImagesOfSize(int pixels) {
         return new SubImagesIterator(this, pixels);
     }
+
+    /**
+     * Visit the square cells of the image at the given pixel size by order (first row,
+     * second row and so on), without creating an Image per cell.
+     *
+     * @param pixels  pixel of each sub-square image
+     * @param visitor called once per cell
+     */
+    default void forEachSquareCell(int pixels, CellVisitor visitor) {
+        for (int cellY = 0; (cellY + 1) * pixels <= getHeight(); cellY++) {
+            for (int cellX = 0; (cellX + 1) * pixels <= getWidth(); cellX++) {
+                visitor.visit(cellX, cellY, cellX * pixels, cellY * pixels, pixels);
+            }
+        }
+    }
 }
 
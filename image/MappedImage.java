@@ -0,0 +1,299 @@
+package image;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A package-private class of the package image.
+ * An image whose pixels live off the heap, packed as ARGB ints in a memory-mapped plane file.
+ * The plane is written once, decoding the image strip after strip, and is reused as long as the
+ * image file keeps its path, length and modification time, so reopening an image skips decoding.
+ * The operating system pages the plane in and out, so images larger than the memory can be read
+ * with a small heap. Reading is fastest row after row, and safe from several threads.
+ * Plane files take 4 bytes per pixel, so after writing one the least recently used planes of the
+ * directory are deleted until they fit in the size given by the system property MAX_BYTES_PROPERTY.
+ */
+class MappedImage implements Image {
+
+    private static final Color DEFAULT_COLOR = Color.WHITE;
+    private static final int MAGIC = 0x41524750;
+    // the fixed part of the header, followed by the path of the image file padded to whole longs
+    private static final int HEADER_BYTES = 32;
+    // a single mapping can not pass 2 GiB, so the plane is mapped as chunks of whole rows
+    private static final long CHUNK_BYTES = 1L << 30;
+    private static final String PLANE_EXTENSION = ".argb";
+
+    /**
+     * System property of the directory of the plane files, the temporary directory by default
+     */
+    static final String DIR_PROPERTY = "ascii_art.planes.dir";
+
+    /**
+     * System property of the most bytes the plane files of the directory may take, 16 GiB by default
+     */
+    static final String MAX_BYTES_PROPERTY = "ascii_art.planes.maxBytes";
+    private static final long DEFAULT_MAX_BYTES = 16L << 30;
+
+    private final int origWidth;
+    private final int origHeight;
+    private final int width;
+    private final int height;
+    private final int frameX;
+    private final int frameY;
+    private final int chunkRows;
+    private final IntBuffer[] chunks;
+
+    /**
+     * Constructor of MappedImage - maps the plane file of the image, writing it first if there is
+     * no plane file for this version of the image
+     *
+     * @param filename        Name of File
+     * @param padToPowerOfTwo Whether to pad each dimension with white margins to a power of 2
+     * @throws IOException Exception to throw
+     */
+    MappedImage(String filename, boolean padToPowerOfTwo) throws IOException {
+        File file = new File(filename);
+        Path plane = planeOf(file);
+        if (isValid(plane, file)) {
+            markUsed(plane);
+        } else {
+            write(filename, file, plane);
+            evictPlanes(plane);
+        }
+
+        try (FileChannel channel = FileChannel.open(plane, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            this.origWidth = header.getInt(4);
+            this.origHeight = header.getInt(8);
+            long pixelsStart = pixelsStartOf(header.getInt(28));
+            this.chunkRows = (int) Math.max(1, CHUNK_BYTES / (Integer.BYTES * (long) this.origWidth));
+            this.chunks = new IntBuffer[(this.origHeight + this.chunkRows - 1) / this.chunkRows];
+            for (int i = 0; i < this.chunks.length; i++) {
+                int rows = Math.min(this.chunkRows, this.origHeight - i * this.chunkRows);
+                long position = pixelsStart + (long) i * this.chunkRows * this.origWidth * Integer.BYTES;
+                this.chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                (long) rows * this.origWidth * Integer.BYTES)
+                        .order(ByteOrder.nativeOrder()).asIntBuffer();
+            }
+        }
+
+        this.width = padToPowerOfTwo ? ceilPowerOfTwo(this.origWidth) : this.origWidth;
+        this.height = padToPowerOfTwo ? ceilPowerOfTwo(this.origHeight) : this.origHeight;
+        this.frameX = (this.width - this.origWidth) / 2;
+        this.frameY = (this.height - this.origHeight) / 2;
+    }
+
+    /**
+     * @return image pixels width
+     */
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return image pixels height
+     */
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * @param x coordinate (Represent Width)
+     * @param y coordinate (Represent Height)
+     * @return the pixel (x,y) of img
+     */
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getRgb(x, y));
+    }
+
+    /**
+     * @param x coordinate (Represent Width)
+     * @param y coordinate (Represent Height)
+     * @return the packed ARGB value of pixel (x,y) of img
+     */
+    @Override
+    public int getRgb(int x, int y) {
+        int row = y - this.frameY, col = x - this.frameX;
+        if (col < 0 || col >= this.origWidth || row < 0 || row >= this.origHeight) {
+            return DEFAULT_COLOR.getRGB();
+        }
+        return this.chunks[row / this.chunkRows].get((row % this.chunkRows) * this.origWidth + col);
+    }
+
+    /**
+     * Copy consecutive pixels of a row straight from the mapped plane
+     */
+    @Override
+    public void getRgbRow(int x, int y, int length, int[] rgb, int offset) {
+        int row = y - this.frameY;
+        int from = Math.max(x, this.frameX), to = Math.min(x + length, this.frameX + this.origWidth);
+        if (row < 0 || row >= this.origHeight || to <= from) {
+            Arrays.fill(rgb, offset, offset + length, DEFAULT_COLOR.getRGB());
+            return;
+        }
+        Arrays.fill(rgb, offset, offset + from - x, DEFAULT_COLOR.getRGB());
+        this.chunks[row / this.chunkRows].get((row % this.chunkRows) * this.origWidth + from - this.frameX,
+                rgb, offset + from - x, to - from);
+        Arrays.fill(rgb, offset + to - x, offset + length, DEFAULT_COLOR.getRGB());
+    }
+
+    // The plane file of an image file, named after its name and the hash of its path
+    private static Path planeOf(File file) {
+        String dir = System.getProperty(DIR_PROPERTY, System.getProperty("java.io.tmpdir"));
+        String name = file.getName() + "-" + Integer.toHexString(file.getAbsolutePath().hashCode());
+        return Path.of(dir, name + PLANE_EXTENSION);
+    }
+
+    // Whether a plane file was written from the current version of the image file - its path is
+    // compared too, as another image may have a path of the same hash
+    private static boolean isValid(Path plane, File file) throws IOException {
+        if (!Files.isRegularFile(plane)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(plane, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (channel.read(header, 0) != HEADER_BYTES || header.getInt(0) != MAGIC) {
+                return false;
+            }
+            byte[] path = pathOf(file);
+            if (header.getInt(28) != path.length) {
+                return false;
+            }
+            ByteBuffer headerPath = ByteBuffer.allocate(path.length);
+            channel.read(headerPath, HEADER_BYTES);
+            long pixels = (long) header.getInt(4) * header.getInt(8);
+            return Arrays.equals(headerPath.array(), path) && header.getLong(12) == file.length() &&
+                    header.getLong(20) == file.lastModified() &&
+                    channel.size() == pixelsStartOf(path.length) + pixels * Integer.BYTES;
+        }
+    }
+
+    // Mark a plane as just used, so it is the last one to be deleted - a plane that can not be marked,
+    // in a directory of someone else, is still read
+    private static void markUsed(Path plane) {
+        try {
+            Files.setLastModifiedTime(plane, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // it is only deleted sooner
+        }
+    }
+
+    // The absolute path of an image file, as kept in the header of its plane
+    private static byte[] pathOf(File file) {
+        return file.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Where the pixels of a plane start, after the header and the path of the image file
+    private static long pixelsStartOf(int pathBytes) {
+        return HEADER_BYTES + (pathBytes + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+    }
+
+    // Delete the least recently used plane files of the directory of a plane, other than it, until
+    // the planes fit in MAX_BYTES_PROPERTY. Planes that can not be deleted, such as ones mapped by
+    // another process on some systems, are left.
+    private static void evictPlanes(Path kept) {
+        long maxBytes = Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES);
+        Map<Path, BasicFileAttributes> planes = new HashMap<>();
+        try (Stream<Path> files = Files.list(kept.getParent())) {
+            files.filter(path -> path.getFileName().toString().endsWith(PLANE_EXTENSION)).forEach(path -> {
+                try {
+                    planes.put(path, Files.readAttributes(path, BasicFileAttributes.class));
+                } catch (IOException gone) {
+                    // deleted by another process meanwhile
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            Logger.getGlobal().warning("Failed to list plane files in " + kept.getParent() + ": " + e);
+            return;
+        }
+        long bytes = planes.values().stream().mapToLong(BasicFileAttributes::size).sum();
+        List<Path> byLastUse = new ArrayList<>(planes.keySet());
+        byLastUse.sort(Comparator.comparing(path -> planes.get(path).lastModifiedTime()));
+        for (Path plane : byLastUse) {
+            if (bytes <= maxBytes) {
+                break;
+            }
+            if (plane.equals(kept)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(plane);
+                bytes -= planes.get(plane).size();
+            } catch (IOException e) {
+                Logger.getGlobal().warning("Failed to delete plane file " + plane + ": " + e);
+            }
+        }
+    }
+
+    // Decode the image strip after strip into a new plane file, which replaces the old one only when
+    // complete, so a plane file is never seen half written
+    private static void write(String filename, File file, Path plane) throws IOException {
+        Files.createDirectories(plane.getParent());
+        Path temp = Files.createTempFile(plane.getParent(), plane.getFileName().toString(), null);
+        try {
+            StreamedImage decoder = new StreamedImage(filename, 1, false);
+            int width = decoder.getWidth(), height = decoder.getHeight();
+            byte[] path = pathOf(file);
+            long pixelsStart = pixelsStartOf(path.length);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate((int) pixelsStart);
+                header.putInt(MAGIC).putInt(width).putInt(height)
+                        .putLong(file.length()).putLong(file.lastModified()).putInt(path.length).put(path).clear();
+                channel.write(header, 0);
+
+                int[] rgbRow = new int[width];
+                int chunkRows = (int) Math.max(1, CHUNK_BYTES / (Integer.BYTES * (long) width));
+                for (int start = 0; start < height; start += chunkRows) {
+                    int rows = Math.min(chunkRows, height - start);
+                    long position = pixelsStart + (long) start * width * Integer.BYTES;
+                    MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                            (long) rows * width * Integer.BYTES);
+                    IntBuffer ints = chunk.order(ByteOrder.nativeOrder()).asIntBuffer();
+                    for (int y = start; y < start + rows; y++) {
+                        decoder.getRgbRow(0, y, width, rgbRow, 0);
+                        ints.put(rgbRow);
+                    }
+                    chunk.force();
+                }
+            } catch (IllegalStateException e) {
+                throw new IOException(e.getMessage(), e.getCause());
+            }
+            Files.move(temp, plane, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Find the greater and closes power of 2 to x
+    private int ceilPowerOfTwo(int num) {
+        int power = 1;
+        while (power < num) power = power << 1;
+        return power;
+    }
+}
@@ -0,0 +1,442 @@
+package image;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Exchanger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * A package-private class of the package image.
+ * An image file that is never decoded as a whole - strips of rows are decoded on demand,
+ * so memory depends on the strip size and not on the image size.
+ * Png files that are not interlaced and jpeg files that are not progressive are decoded in one pass
+ * from the first strip asked for down, on a thread that hands the strips over one by one, so reading
+ * the image row after row decodes it once. Other files, or a strip above the ones already handed over,
+ * are decoded again from the top of the file.
+ * Access is fastest row after row. The class is not thread safe.
+ */
+class StreamedImage implements Image {
+
+    private static final Color DEFAULT_COLOR = Color.WHITE;
+    private static final int STRIP_PIXELS = 1 << 22;
+    private static final long POLL_MILLIS = 100;
+    private static final long PASS_TIMEOUT_MILLIS = 60_000;
+
+    /**
+     * Images with more pixels than this are better streamed than held in memory
+     */
+    static final long MIN_STREAMED_PIXELS = 1L << 26;
+
+    private final File file;
+    private final int subsampling;
+    private final int origWidth;
+    private final int origHeight;
+    private final int width;
+    private final int height;
+    private final int frameX;
+    private final int frameY;
+    private final int stripRows;
+
+    private int[] strip;
+    private int stripStart = -1;
+    private boolean onePass;
+    private Pass pass;
+
+    /**
+     * Constructor of StreamedImage - reads only the image header
+     *
+     * @param filename    Name of File
+     * @param subsampling     Keep one of every subsampling pixels in each axis, 1 to keep all
+     * @param padToPowerOfTwo Whether to pad each dimension with white margins to a power of 2
+     * @throws IOException Exception to throw
+     */
+    StreamedImage(String filename, int subsampling, boolean padToPowerOfTwo) throws IOException {
+        if (subsampling < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.file = new File(filename);
+        this.subsampling = subsampling;
+        int[] size = sizeOf(filename);
+        this.origWidth = (size[0] + subsampling - 1) / subsampling;
+        this.origHeight = (size[1] + subsampling - 1) / subsampling;
+
+        this.width = padToPowerOfTwo ? ceilPowerOfTwo(this.origWidth) : this.origWidth;
+        this.height = padToPowerOfTwo ? ceilPowerOfTwo(this.origHeight) : this.origHeight;
+        this.frameX = (this.width - this.origWidth) / 2;
+        this.frameY = (this.height - this.origHeight) / 2;
+
+        this.stripRows = Math.max(1, Math.min(this.origHeight, STRIP_PIXELS / this.origWidth));
+        this.strip = new int[this.stripRows * this.origWidth];
+        this.onePass = isOnePass(this.file);
+    }
+
+    /**
+     * Read the width and height of an image file without decoding it
+     *
+     * @param filename Name of File
+     * @return {width, height}
+     * @throws IOException if the file is not a readable image
+     */
+    static int[] sizeOf(String filename) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = readerOf(input, true);
+            try {
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return image pixels width
+     */
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return image pixels height
+     */
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * @param x coordinate (Represent Width)
+     * @param y coordinate (Represent Height)
+     * @return the pixel (x,y) of img
+     */
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getRgb(x, y));
+    }
+
+    /**
+     * @param x coordinate (Represent Width)
+     * @param y coordinate (Represent Height)
+     * @return the packed ARGB value of pixel (x,y) of img, decoding its strip if needed
+     */
+    @Override
+    public int getRgb(int x, int y) {
+        int row = y - this.frameY, col = x - this.frameX;
+        if (col < 0 || col >= this.origWidth || row < 0 || row >= this.origHeight) {
+            return DEFAULT_COLOR.getRGB();
+        }
+        if (this.stripStart < 0 || row < this.stripStart || row >= this.stripStart + this.stripRows) {
+            loadStrip(row - row % this.stripRows);
+        }
+        return this.strip[(row - this.stripStart) * this.origWidth + col];
+    }
+
+    /**
+     * Copy consecutive pixels of a row, decoding its strip if needed
+     */
+    @Override
+    public void getRgbRow(int x, int y, int length, int[] rgb, int offset) {
+        int row = y - this.frameY;
+        int from = Math.max(x, this.frameX), to = Math.min(x + length, this.frameX + this.origWidth);
+        if (row < 0 || row >= this.origHeight || to <= from) {
+            Arrays.fill(rgb, offset, offset + length, DEFAULT_COLOR.getRGB());
+            return;
+        }
+        if (this.stripStart < 0 || row < this.stripStart || row >= this.stripStart + this.stripRows) {
+            loadStrip(row - row % this.stripRows);
+        }
+        Arrays.fill(rgb, offset, offset + from - x, DEFAULT_COLOR.getRGB());
+        System.arraycopy(this.strip, (row - this.stripStart) * this.origWidth + from - this.frameX,
+                rgb, offset + from - x, to - from);
+        Arrays.fill(rgb, offset + to - x, offset + length, DEFAULT_COLOR.getRGB());
+    }
+
+    // Make the strip of rows starting at the given row the current one, taking it from the pass
+    // decoding the file if it has not handed it over yet
+    private void loadStrip(int start) {
+        if (!this.onePass) {
+            readStrip(start);
+            return;
+        }
+        if (this.pass == null || start < this.pass.handed || this.pass.gaveUp) {
+            if (this.pass != null) {
+                this.pass.stop();
+            }
+            this.pass = new Pass(start);
+            this.pass.thread.start();
+        }
+        while (this.pass.handed <= start) {
+            int[] next = this.pass.take(this.strip);
+            if (next == null) {
+                Logger.getGlobal().warning("Failed to decode " + this.file
+                        + " in one pass, decoding strip after strip: " + this.pass.failure);
+                this.pass = null;
+                this.onePass = false;
+                readStrip(start);
+                return;
+            }
+            this.strip = next;
+            this.stripStart = this.pass.handed;
+            this.pass.handed += this.stripRows;
+        }
+    }
+
+    // Decode the strip of rows starting at the given row
+    private void readStrip(int start) {
+        int rows = Math.min(this.stripRows, this.origHeight - start);
+        try (ImageInputStream input = ImageIO.createImageInputStream(this.file)) {
+            ImageReader reader = readerOf(input, true);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                int sourceStart = start * this.subsampling;
+                param.setSourceRegion(new Rectangle(0, sourceStart, reader.getWidth(0),
+                        Math.min(rows * this.subsampling, reader.getHeight(0) - sourceStart)));
+                param.setSourceSubsampling(this.subsampling, this.subsampling, 0, 0);
+                BufferedImage im = reader.read(0, param);
+                im.getRGB(0, 0, this.origWidth, rows, this.strip, 0, this.origWidth);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Failed to decode " + this.file, ioe);
+        }
+        this.stripStart = start;
+    }
+
+    // Whether the file is a png that is not interlaced or a jpeg that is not progressive, which
+    // readers decode top to bottom in one pass
+    private static boolean isOnePass(File file) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = readerOf(input, false);
+            try {
+                String format = reader.getFormatName();
+                if (!format.equalsIgnoreCase("png") && !format.equalsIgnoreCase("jpeg")) {
+                    return false;
+                }
+                IIOMetadata metadata = reader.getImageMetadata(0);
+                Node tree = metadata.getAsTree(metadata.getNativeMetadataFormatName());
+                return format.equalsIgnoreCase("png")
+                        ? "none".equals(attributeOf(tree, "IHDR", "interlaceMethod"))
+                        : !"2".equals(attributeOf(tree, "sof", "process"));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Find the value of an attribute of the first element of the given name in a metadata tree
+    private static String attributeOf(Node node, String element, String attribute) {
+        if (node.getNodeName().equals(element)) {
+            Node value = node.getAttributes().getNamedItem(attribute);
+            return value == null ? null : value.getNodeValue();
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            String value = attributeOf(child, element, attribute);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    // Find a reader for the input and attach it
+    private static ImageReader readerOf(ImageInputStream input, boolean ignoreMetadata) throws IOException {
+        Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+        if (readers == null || !readers.hasNext()) {
+            throw new IOException("No image reader");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, ignoreMetadata);
+        return reader;
+    }
+
+    /**
+     * One pass of a reader over the file, from a strip down to the last row, on its own thread.
+     * The reader writes into a raster as tall as the rest of the image that keeps only one strip of it,
+     * and each time the strip is full it is handed over to the thread of the image and the raster
+     * moves on to the next one.
+     */
+    private class Pass implements Runnable, IIOReadUpdateListener {
+        private final int first;
+        private final Exchanger<int[]> exchanger = new Exchanger<>();
+        private final Thread thread;
+        private volatile boolean stopped;
+        private volatile boolean gaveUp;
+        private volatile Throwable failure;
+
+        // Owned by the thread of the image: the first row of the next strip to take
+        private int handed;
+
+        // Owned by the thread of the pass
+        private BufferedImage window;
+        private WindowRaster raster;
+        private int windowStart;
+        private int[] buffer;
+
+        Pass(int first) {
+            this.first = first;
+            this.handed = first;
+            this.thread = new Thread(this, "Decoder of " + StreamedImage.this.file.getName());
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Decode the file from the first strip down, handing every strip over
+         */
+        @Override
+        public void run() {
+            try (ImageInputStream input = ImageIO.createImageInputStream(StreamedImage.this.file)) {
+                ImageReader reader = readerOf(input, true);
+                try {
+                    int rows = StreamedImage.this.origHeight - this.first;
+                    ImageTypeSpecifier type = reader.getImageTypes(0).next();
+                    this.window = type.createBufferedImage(StreamedImage.this.origWidth, StreamedImage.this.stripRows);
+                    this.raster = new WindowRaster(this.window.getRaster(), rows);
+                    this.buffer = new int[StreamedImage.this.strip.length];
+
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    int sourceStart = this.first * StreamedImage.this.subsampling;
+                    param.setSourceRegion(new Rectangle(0, sourceStart, reader.getWidth(0),
+                            reader.getHeight(0) - sourceStart));
+                    param.setSourceSubsampling(StreamedImage.this.subsampling, StreamedImage.this.subsampling, 0, 0);
+                    param.setDestination(new BufferedImage(this.window.getColorModel(), this.raster,
+                            this.window.isAlphaPremultiplied(), null));
+                    reader.addIIOReadUpdateListener(this);
+                    reader.read(0, param);
+                    if (this.windowStart < rows) {
+                        handOver(rows - this.windowStart);
+                    }
+                } finally {
+                    reader.dispose();
+                }
+            } catch (Throwable t) {
+                if (!this.stopped && !this.gaveUp) {
+                    this.failure = t;
+                }
+            }
+        }
+
+        /**
+         * Hand the strip over once its last row is decoded
+         */
+        @Override
+        public void imageUpdate(ImageReader source, BufferedImage theImage, int minX, int minY,
+                                int width, int height, int periodX, int periodY, int[] bands) {
+            int lastRow = minY + (height - 1) * periodY;
+            if (lastRow >= this.windowStart + StreamedImage.this.stripRows - 1) {
+                handOver(StreamedImage.this.stripRows);
+            }
+        }
+
+        // Copy the rows of the window into the buffer, exchange it for the strip the image is done with,
+        // and move the window to the next strip
+        private void handOver(int rows) {
+            int width = StreamedImage.this.origWidth;
+            this.window.getRGB(0, 0, width, rows, this.buffer, 0, width);
+            try {
+                this.buffer = this.exchanger.exchange(this.buffer, PASS_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                this.gaveUp = true;
+                throw new CancellationException("No one took the strip");
+            } catch (InterruptedException e) {
+                throw new CancellationException("Stopped");
+            }
+            this.windowStart += StreamedImage.this.stripRows;
+            this.raster.moveTo(this.windowStart);
+        }
+
+        /**
+         * Take the next strip, giving the current one back
+         *
+         * @param strip The strip the image is done with
+         * @return the next strip, null if the pass ended without it
+         */
+        int[] take(int[] strip) {
+            while (true) {
+                try {
+                    return this.exchanger.exchange(strip, POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (!this.thread.isAlive()) {
+                        return null;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while decoding " + StreamedImage.this.file, e);
+                }
+            }
+        }
+
+        /**
+         * Stop the pass, leaving the strips it did not hand over undecoded
+         */
+        void stop() {
+            this.stopped = true;
+            this.thread.interrupt();
+        }
+
+        @Override
+        public void passStarted(ImageReader source, BufferedImage theImage, int pass, int minPass, int maxPass,
+                                int minX, int minY, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void passComplete(ImageReader source, BufferedImage theImage) {
+        }
+
+        @Override
+        public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail, int pass, int minPass,
+                                         int maxPass, int minX, int minY, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail, int minX, int minY,
+                                    int width, int height, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {
+        }
+    }
+
+    /**
+     * A raster of many rows whose samples are kept only for a window of them, the rows of the
+     * window are stored in the data of a smaller raster
+     */
+    private static class WindowRaster extends WritableRaster {
+        WindowRaster(WritableRaster window, int rows) {
+            super(window.getSampleModel(), window.getDataBuffer(),
+                    new Rectangle(0, 0, window.getWidth(), rows), new Point(0, 0), null);
+        }
+
+        // Keep the rows from the given one on in the window
+        void moveTo(int row) {
+            this.sampleModelTranslateY = row;
+        }
+    }
+
+    // Find the greater and closes power of 2 to x
+    private int ceilPowerOfTwo(int num) {
+        int power = 1;
+        while (power < num) power = power << 1;
+        return power;
+    }
+}
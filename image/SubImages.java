@@ -41,6 +41,20 @@ class SubImages implements Image {
         return this.img.getPixel(this.startX + x, this.startY + y);
     }
 
+    @Override
+    public int getRgb(int x, int y) {
+        if (x < 0 || y < 0 || x >= this.getWidth() || y >= this.getHeight())
+            throw new IndexOutOfBoundsException();
+        return this.img.getRgb(this.startX + x, this.startY + y);
+    }
+
+    @Override
+    public void getRgbRow(int x, int y, int length, int[] rgb, int offset) {
+        if (x < 0 || y < 0 || length < 0 || x + length > this.getWidth() || y >= this.getHeight())
+            throw new IndexOutOfBoundsException();
+        this.img.getRgbRow(this.startX + x, this.startY + y, length, rgb, offset);
+    }
+
     @Override
     public int getWidth() {
         return this.pixels;
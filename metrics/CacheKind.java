@@ -0,0 +1,32 @@
+package metrics;
+
+/**
+ * The caches whose hit rates are counted
+ */
+public enum CacheKind {
+    /**
+     * Glyphs rendered by CharRenderer
+     */
+    GLYPHS("glyphs"),
+    /**
+     * Ascii art memoized by the matchers
+     */
+    RENDERS("renders"),
+    /**
+     * Decoded images of the conversion server
+     */
+    IMAGES("images");
+
+    private final String label;
+
+    CacheKind(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return the name of the cache
+     */
+    public String getLabel() {
+        return this.label;
+    }
+}
@@ -0,0 +1,36 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hits and misses of a cache. Safe to count into from many threads at once.
+ */
+public class CacheStats implements CacheStatsMXBean {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Count a lookup
+     *
+     * @param hit whether the lookup found what it looked for
+     */
+    public void count(boolean hit) {
+        (hit ? this.hits : this.misses).increment();
+    }
+
+    @Override
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hits = getHits(), lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,21 @@
+package metrics;
+
+/**
+ * JMX view of the hit rate of a cache
+ */
+public interface CacheStatsMXBean {
+    /**
+     * @return number of lookups that found what they looked for
+     */
+    long getHits();
+
+    /**
+     * @return number of lookups that did not
+     */
+    long getMisses();
+
+    /**
+     * @return share of the lookups that were hits, 0 if there were none
+     */
+    double getHitRate();
+}
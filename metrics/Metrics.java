@@ -0,0 +1,111 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * The timings of every stage and the hit rates of every cache, for the whole process.
+ * Every run of a stage is also a StageEvent for the flight recorder.
+ * Usage:
+ * StageTimer timer = Metrics.start(Stage.DECODE);
+ * ...
+ * timer.stop(pixels);
+ */
+public final class Metrics {
+    private static final String DOMAIN = "ascii_art";
+    private static final String STAGE_NAME_FORMAT = DOMAIN + ":type=Stage,name=%s";
+    private static final String CACHE_NAME_FORMAT = DOMAIN + ":type=Cache,name=%s";
+    private static final String STAGE_FORMAT =
+            "%-10s %8d runs %10.1f ms total %8.3f ms p50 %8.3f ms p99 %8.3f ms max %14.0f %s/s%n";
+    private static final String CACHE_FORMAT = "%-10s %8d hits %8d misses %6.1f%% hit rate%n";
+    private static final double PERCENT = 100;
+
+    private static final Map<Stage, StageStats> stages = new EnumMap<>(Stage.class);
+    private static final Map<CacheKind, CacheStats> caches = new EnumMap<>(CacheKind.class);
+
+    static {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageStats());
+        }
+        for (CacheKind cache : CacheKind.values()) {
+            caches.put(cache, new CacheStats());
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Start timing a run of a stage
+     *
+     * @param stage the stage
+     * @return the timer to stop at the end of the run
+     */
+    public static StageTimer start(Stage stage) {
+        return new StageTimer(stage);
+    }
+
+    /**
+     * @param stage a stage
+     * @return the timings of the stage
+     */
+    public static StageStats stage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * @param cache a cache
+     * @return the hit rate of the cache
+     */
+    public static CacheStats cache(CacheKind cache) {
+        return caches.get(cache);
+    }
+
+    /**
+     * Register all the stages and caches with the platform MBean server, under the ascii_art domain.
+     * Failures are logged and do not stop the program.
+     */
+    public static void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (Stage stage : Stage.values()) {
+                ObjectName name = new ObjectName(String.format(STAGE_NAME_FORMAT, stage.getLabel()));
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(stage(stage), name);
+                }
+            }
+            for (CacheKind cache : CacheKind.values()) {
+                ObjectName name = new ObjectName(String.format(CACHE_NAME_FORMAT, cache.getLabel()));
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(cache(cache), name);
+                }
+            }
+        } catch (JMException e) {
+            Logger.getGlobal().warning("Failed to register metrics MBeans: " + e);
+        }
+    }
+
+    /**
+     * @return a table of the timings of every stage and the hit rates of every cache
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            StageStats stats = stage(stage);
+            report.append(String.format(STAGE_FORMAT, stage.getLabel(), stats.getCount(), stats.getTotalMillis(),
+                    stats.getP50Millis(), stats.getP99Millis(), stats.getMaxMillis(), stats.getItemsPerSecond(),
+                    stage.getItemsLabel()));
+        }
+        for (CacheKind cache : CacheKind.values()) {
+            CacheStats stats = cache(cache);
+            report.append(String.format(CACHE_FORMAT, cache.getLabel(), stats.getHits(), stats.getMisses(),
+                    stats.getHitRate() * PERCENT));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package metrics;
+
+/**
+ * The stages of converting an image to ascii art
+ */
+public enum Stage {
+    /**
+     * Decoding an image file, items are pixels
+     */
+    DECODE("decode", "pixels"),
+    /**
+     * Rendering the glyphs of a font and measuring their brightness, items are chars
+     */
+    GLYPHS("glyphs", "chars"),
+    /**
+     * Computing the brightness of a grid of cells, items are cells
+     */
+    BRIGHTNESS("brightness", "cells"),
+    /**
+     * Matching a char to every cell, including handing the rows over to the output, items are cells
+     */
+    MATCHING("matching", "cells"),
+    /**
+     * Writing a buffer of ascii art out, items are bytes
+     */
+    OUTPUT("output", "bytes");
+
+    private final String label;
+    private final String itemsLabel;
+
+    Stage(String label, String itemsLabel) {
+        this.label = label;
+        this.itemsLabel = itemsLabel;
+    }
+
+    /**
+     * @return the name of the stage
+     */
+    public String getLabel() {
+        return this.label;
+    }
+
+    /**
+     * @return what the items of the stage are
+     */
+    public String getItemsLabel() {
+        return this.itemsLabel;
+    }
+}
@@ -0,0 +1,24 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a run of a stage. Costs next to nothing unless a recording that
+ * enables it is running.
+ */
+@Name("ascii_art.Stage")
+@Label("Ascii Art Stage")
+@Category("Ascii Art")
+@Description("A run of a stage of converting an image to ascii art")
+class StageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Items")
+    @Description("Pixels, chars, cells or bytes, depending on the stage")
+    long items;
+}
@@ -0,0 +1,95 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings of a stage: counters and a latency histogram whose buckets are powers of 2 nanoseconds.
+ * Safe to record into from many threads at once.
+ */
+public class StageStats implements StageStatsMXBean {
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double P50 = 0.5;
+    private static final double P99 = 0.99;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(Long.SIZE);
+
+    /**
+     * Record a run of the stage
+     *
+     * @param runNanos time the run took
+     * @param runItems items the run went through
+     */
+    void record(long runNanos, long runItems) {
+        runNanos = Math.max(0, runNanos);
+        this.count.increment();
+        this.items.add(runItems);
+        this.nanos.add(runNanos);
+        this.maxNanos.accumulate(runNanos);
+        this.histogram.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(runNanos));
+    }
+
+    @Override
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    @Override
+    public long getItems() {
+        return this.items.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return this.nanos.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long count = getCount();
+        return count == 0 ? 0 : getTotalMillis() / count;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return percentileNanos(P50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentileNanos(P99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return this.maxNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getItemsPerSecond() {
+        long nanos = this.nanos.sum();
+        return nanos == 0 ? 0 : getItems() * NANOS_PER_SECOND / nanos;
+    }
+
+    // Upper bound of the histogram bucket the given share of the runs is in
+    private long percentileNanos(double share) {
+        long total = 0;
+        for (int i = 0; i < this.histogram.length(); i++) {
+            total += this.histogram.get(i);
+        }
+        long rank = (long) Math.ceil(total * share), seen = 0;
+        for (int i = 0; i < this.histogram.length(); i++) {
+            seen += this.histogram.get(i);
+            if (0 < rank && rank <= seen) {
+                return i == 0 ? 0 : Math.min(1L << i, this.maxNanos.get());
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,46 @@
+package metrics;
+
+/**
+ * JMX view of the timings of a stage
+ */
+public interface StageStatsMXBean {
+    /**
+     * @return number of times the stage ran
+     */
+    long getCount();
+
+    /**
+     * @return number of items the stage went through
+     */
+    long getItems();
+
+    /**
+     * @return total time spent in the stage
+     */
+    double getTotalMillis();
+
+    /**
+     * @return mean time of a run of the stage
+     */
+    double getMeanMillis();
+
+    /**
+     * @return time under which half of the runs took, rounded up to a power of 2 nanoseconds
+     */
+    double getP50Millis();
+
+    /**
+     * @return time under which 99% of the runs took, rounded up to a power of 2 nanoseconds
+     */
+    double getP99Millis();
+
+    /**
+     * @return longest run of the stage
+     */
+    double getMaxMillis();
+
+    /**
+     * @return items per second of time spent in the stage
+     */
+    double getItemsPerSecond();
+}
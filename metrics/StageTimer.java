@@ -0,0 +1,36 @@
+package metrics;
+
+/**
+ * Times a single run of a stage, from its creation by Metrics.start until stop
+ */
+public class StageTimer {
+    private final Stage stage;
+    private final long start;
+    private final StageEvent event = new StageEvent();
+
+    /**
+     * Constructor - starts the run
+     *
+     * @param stage the stage that runs
+     */
+    StageTimer(Stage stage) {
+        this.stage = stage;
+        this.event.begin();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * End the run and record it
+     *
+     * @param items items the run went through
+     */
+    public void stop(long items) {
+        Metrics.stage(this.stage).record(System.nanoTime() - this.start, items);
+        this.event.end();
+        if (this.event.shouldCommit()) {
+            this.event.stage = this.stage.getLabel();
+            this.event.items = items;
+            this.event.commit();
+        }
+    }
+}
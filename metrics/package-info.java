@@ -0,0 +1,5 @@
+/**
+ * Timings and counters of the stages of converting images to ascii art, exposed through JMX and
+ * as JFR events
+ */
+package metrics;
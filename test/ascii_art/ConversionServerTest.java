@@ -0,0 +1,99 @@
+package ascii_art;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The cache of decoded images - hit and miss headers, and eviction of the least recently used
+ * image once what the matchers keep passes the cache memory - and the statuses of failed requests
+ */
+class ConversionServerTest {
+    private static final int IMAGE_PIXELS = 64;
+    // room for an image, but not for two along with their brightness pyramids
+    private static final long SMALL_CACHE_BYTES = 40_000;
+    private static final long LARGE_CACHE_BYTES = 1 << 24;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ConversionServer server;
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void sameImageIsAHit() throws Exception {
+        start(LARGE_CACHE_BYTES);
+        byte[] a = png(1), b = png(2);
+        assertEquals("miss", post(a, "16").headers().firstValue("X-Cache").orElse(null));
+        assertEquals("hit", post(a, "8").headers().firstValue("X-Cache").orElse(null));
+        assertEquals("miss", post(b, "16").headers().firstValue("X-Cache").orElse(null));
+        assertEquals("hit", post(a, "16").headers().firstValue("X-Cache").orElse(null));
+    }
+
+    @Test
+    void leastRecentlyUsedImageIsEvicted() throws Exception {
+        start(SMALL_CACHE_BYTES);
+        byte[] a = png(1), b = png(2);
+        assertEquals("miss", post(a, "16").headers().firstValue("X-Cache").orElse(null));
+        assertEquals("hit", post(a, "16").headers().firstValue("X-Cache").orElse(null));
+        assertEquals("miss", post(b, "16").headers().firstValue("X-Cache").orElse(null));
+        assertEquals("miss", post(a, "16").headers().firstValue("X-Cache").orElse(null));
+    }
+
+    @Test
+    void badWidthIsABadRequest() throws Exception {
+        start(LARGE_CACHE_BYTES);
+        byte[] a = png(1);
+        assertEquals(400, post(a, "99999999999").statusCode());
+        assertEquals(400, post(a, "-3").statusCode());
+        assertEquals(400, post(a, "wide").statusCode());
+        assertEquals(200, post(a, "16").statusCode());
+    }
+
+    @Test
+    void notAnImageIsUnsupported() throws Exception {
+        start(LARGE_CACHE_BYTES);
+        assertEquals(415, post(new byte[]{1, 2, 3}, "16").statusCode());
+    }
+
+    // Start a server on a free port
+    private void start(long maxCacheBytes) throws IOException {
+        server = new ConversionServer(0, 2, maxCacheBytes);
+        server.start();
+    }
+
+    // Convert an image file at the given width
+    private HttpResponse<String> post(byte[] image, String width) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + server.getPort() + "/convert?width=" + width))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(image)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    // A png file of a gradient that differs by seed
+    private static byte[] png(int seed) throws IOException {
+        BufferedImage img = new BufferedImage(IMAGE_PIXELS, IMAGE_PIXELS, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < IMAGE_PIXELS; y++) {
+            for (int x = 0; x < IMAGE_PIXELS; x++) {
+                img.setRGB(x, y, ((x * 4 * seed) & 0xFF) * 0x10101 ^ y);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+        return out.toByteArray();
+    }
+}
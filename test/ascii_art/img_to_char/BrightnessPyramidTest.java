@@ -0,0 +1,87 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Grids reduced from the finest grid so far against the same grids read directly from the image
+ */
+class BrightnessPyramidTest {
+    private static final float TOLERANCE = 1e-5f;
+    // small enough for an integral image
+    private static final int SMALL_WIDTH = 300, SMALL_HEIGHT = 200;
+    // too big for an integral image, so grids are scanned from the rows
+    private static final int BIG_SIZE = 4100;
+
+    @Test
+    void wholePixelBlocksFromTheIntegral() {
+        assertReducedAsDirect(new NoiseImage(SMALL_WIDTH, SMALL_HEIGHT), 60, 25, 5, 8, 20, 12, 15, 16);
+    }
+
+    @Test
+    void fractionalBlocksFromTheIntegral() {
+        assertReducedAsDirect(new NoiseImage(SMALL_WIDTH, SMALL_HEIGHT), 120, 53, 2.5, 3.75, 40, 17, 7.5, 11.25);
+    }
+
+    @Test
+    void sameGridIsTheFinestOne() {
+        Image img = new NoiseImage(SMALL_WIDTH, SMALL_HEIGHT);
+        BrightnessPyramid pyramid = new BrightnessPyramid(img);
+        float[] fine = pyramid.cellsOf(60, 25, 5, 8);
+        assertTrue(fine == pyramid.fromFinestGrid(60, 25, 5, 8));
+    }
+
+    @Test
+    void notWholeBlocksAreNotReduced() {
+        BrightnessPyramid pyramid = new BrightnessPyramid(new NoiseImage(SMALL_WIDTH, SMALL_HEIGHT));
+        pyramid.cellsOf(60, 25, 5, 8);
+        assertNull(pyramid.fromFinestGrid(40, 20, 7.5, 8));
+        assertNull(pyramid.fromFinestGrid(30, 20, 10, 10));
+        // more cells than the finest grid covers
+        assertNull(pyramid.fromFinestGrid(20, 13, 15, 16));
+    }
+
+    @Test
+    void blocksFromScannedRows() {
+        assertReducedAsDirect(new NoiseImage(BIG_SIZE, BIG_SIZE), 1640, 820, 2.5, 5, 546, 410, 7.5, 10);
+    }
+
+    @Test
+    void scannedEdgesOffTheBlocksAreNotReduced() {
+        Image img = new NoiseImage(BIG_SIZE, BIG_SIZE);
+        BrightnessPyramid pyramid = new BrightnessPyramid(img);
+        pyramid.cellsOf(3280, 3280, 1.25, 1.25);
+        // a whole block of 2 cells within tolerance, but rounding to pixels 2 where the blocks round to 3
+        double cellSize = 2.5 * (1 - 1e-10);
+        assertNull(pyramid.fromFinestGrid(1640, 1640, cellSize, cellSize));
+        assertArrayEquals(new BrightnessPyramid(img).cellsOf(1640, 1640, cellSize, cellSize),
+                pyramid.cellsOf(1640, 1640, cellSize, cellSize), TOLERANCE);
+    }
+
+    @Test
+    void blockEdges() {
+        int[] fineEdges = BrightnessPyramid.edgesOf(8, 1.25);
+        assertTrue(BrightnessPyramid.isOnBlockEdges(BrightnessPyramid.edgesOf(2, 5), fineEdges, 4));
+        assertFalse(BrightnessPyramid.isOnBlockEdges(BrightnessPyramid.edgesOf(4, 2.5 * (1 - 1e-10)), fineEdges, 2));
+        assertFalse(BrightnessPyramid.isOnBlockEdges(new int[]{0, 3, 5}, new int[]{0, 1, 3, 4, 6}, 2));
+    }
+
+    // Reduce the coarse grid from the fine one and compare it with a pyramid that never read the fine one
+    private static void assertReducedAsDirect(Image img, int fineCols, int fineRows, double fineWidth,
+                                              double fineHeight, int cols, int rows, double cellWidth,
+                                              double cellHeight) {
+        BrightnessPyramid pyramid = new BrightnessPyramid(img);
+        pyramid.cellsOf(fineCols, fineRows, fineWidth, fineHeight);
+        float[] reduced = pyramid.fromFinestGrid(cols, rows, cellWidth, cellHeight);
+        assertNotNull(reduced);
+        float[] direct = new BrightnessPyramid(img).cellsOf(cols, rows, cellWidth, cellHeight);
+        assertArrayEquals(direct, reduced, TOLERANCE);
+        assertArrayEquals(direct, pyramid.cellsOf(cols, rows, cellWidth, cellHeight), TOLERANCE);
+    }
+}
@@ -0,0 +1,79 @@
+package ascii_art.img_to_char;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Chars equally close to a brightness: the darker one is chosen, and out of chars of the same
+ * brightness the one with the lowest code, whatever order the chars were given in
+ */
+class CompiledCharSetTest {
+    private static final String FONT = "Monospaced";
+    private static final char[][] PAIRS = {{' ', '@'}, {'.', '#'}, {':', 'o'}, {'-', '%'}};
+    private static final CharBrightnessTable TABLE = new CharBrightnessTable(FONT);
+
+    @Test
+    void halfwayGoesToTheDarkerChar() {
+        for (char[] pair : PAIRS) {
+            char darker = TABLE.brightnessOf(pair[0]) < TABLE.brightnessOf(pair[1]) ? pair[0] : pair[1];
+            // two chars are stretched to 0 and 1, so 0.5 is exactly halfway
+            assertEquals(darker, new CompiledCharSet(TABLE, new Character[]{pair[0], pair[1]}).closestCharTo(0.5f));
+            assertEquals(darker, new CompiledCharSet(TABLE, new Character[]{pair[1], pair[0]}).closestCharTo(0.5f));
+        }
+    }
+
+    @Test
+    void sameBrightnessGoesToTheLowestCode() {
+        List<List<Character>> ties = sameBrightnessChars();
+        // which chars tie depends on how the font renders
+        assumeFalse(ties.isEmpty(), FONT + " has no chars of the same brightness");
+        for (List<Character> tie : ties) {
+            char lowest = Collections.min(tie);
+            List<Character> charSet = new ArrayList<>(tie);
+            charSet.add(' ');
+            charSet.add(darkestChar());
+            for (int order = 0; order < 2; order++) {
+                CompiledCharSet compiled = new CompiledCharSet(TABLE, charSet.toArray(new Character[0]));
+                for (char ch : tie) {
+                    assertEquals(compiled.brightnessOf(lowest), compiled.brightnessOf(ch));
+                    assertEquals(lowest, compiled.closestCharTo(compiled.brightnessOf(ch)), "tie of " + tie);
+                }
+                Collections.reverse(charSet);
+            }
+        }
+    }
+
+    // The printable chars that share their brightness with another char, grouped by brightness
+    private static List<List<Character>> sameBrightnessChars() {
+        Map<Float, List<Character>> byBrightness = new LinkedHashMap<>();
+        for (char ch = CharBrightnessTable.FIRST_CHAR; ch <= CharBrightnessTable.LAST_CHAR; ch++) {
+            byBrightness.computeIfAbsent(TABLE.brightnessOf(ch), brightness -> new ArrayList<>()).add(ch);
+        }
+        List<List<Character>> ties = new ArrayList<>();
+        for (List<Character> chars : byBrightness.values()) {
+            if (chars.size() > 1) {
+                ties.add(chars);
+            }
+        }
+        return ties;
+    }
+
+    // The printable char of least brightness
+    private static char darkestChar() {
+        char darkest = CharBrightnessTable.FIRST_CHAR;
+        for (char ch = CharBrightnessTable.FIRST_CHAR; ch <= CharBrightnessTable.LAST_CHAR; ch++) {
+            if (TABLE.brightnessOf(ch) < TABLE.brightnessOf(darkest)) {
+                darkest = ch;
+            }
+        }
+        return darkest;
+    }
+}
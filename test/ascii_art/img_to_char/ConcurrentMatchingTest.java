@@ -0,0 +1,83 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * One matcher shared by many threads, asked for mixed char sets and widths and released midway,
+ * against the same ascii art matched by a matcher of its own for every call
+ */
+class ConcurrentMatchingTest {
+    private static final String FONT = "Monospaced";
+    private static final int THREADS = 16;
+    private static final int CALLS = 400;
+    // one call in RELEASE_EVERY releases the shared matcher instead of matching
+    private static final int RELEASE_EVERY = 10;
+    private static final int[] WIDTHS = {20, 45, 80, 133, 200};
+    private static final Character[][] CHAR_SETS = {
+            {' ', '.', ':', '*', '#', '@'},
+            {'@', '#', '*', ':', '.', ' '},
+            {' ', '-', '=', '+', 'o', 'O', 'M'},
+            {'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm'},
+            {'/', '\\', '|', '_', '-', ' '}};
+    private static final Image IMAGE = new RingsImage(600, 400);
+    private static final CharBrightnessTable TABLE = new CharBrightnessTable(FONT);
+
+    @Test
+    void sharedBrightnessMatcher() throws Exception {
+        assertSharedAsSerial(img -> new BrightnessImgCharMatcher(img, TABLE));
+    }
+
+    @Test
+    void sharedShapeMatcher() throws Exception {
+        assertSharedAsSerial(img -> new ShapeImgCharMatcher(img, TABLE));
+    }
+
+    // Run the calls on the shared matcher from all the threads, then compare every one of them with
+    // the ascii art of its char set and width matched serially
+    private static void assertSharedAsSerial(Function<Image, CellGridMatcher<?>> matcherOf) throws Exception {
+        Map<String, char[][]> serial = new HashMap<>();
+        for (int charSet = 0; charSet < CHAR_SETS.length; charSet++) {
+            for (int width : WIDTHS) {
+                serial.put(charSet + "/" + width, matcherOf.apply(IMAGE).chooseChars(width, CHAR_SETS[charSet]));
+            }
+        }
+        CellGridMatcher<?> shared = matcherOf.apply(IMAGE);
+        Random random = new Random(CALLS);
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<String> keys = new ArrayList<>();
+            List<Future<char[][]>> results = new ArrayList<>();
+            List<Future<?>> releases = new ArrayList<>();
+            for (int call = 0; call < CALLS; call++) {
+                if (call % RELEASE_EVERY == RELEASE_EVERY - 1) {
+                    releases.add(threads.submit(shared::release));
+                    continue;
+                }
+                int charSet = random.nextInt(CHAR_SETS.length), width = WIDTHS[random.nextInt(WIDTHS.length)];
+                keys.add(charSet + "/" + width);
+                results.add(threads.submit(() -> shared.chooseChars(width, CHAR_SETS[charSet])));
+            }
+            for (int call = 0; call < results.size(); call++) {
+                assertArrayEquals(serial.get(keys.get(call)), results.get(call).get(), keys.get(call));
+            }
+            for (Future<?> release : releases) {
+                release.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+}
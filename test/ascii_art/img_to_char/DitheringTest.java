@@ -0,0 +1,127 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Dithering off against matching with no dithering ever set, and dithering of an image of a single
+ * brightness between two chars
+ */
+class DitheringTest {
+    private static final String FONT = "Monospaced";
+    private static final int WIDTH = 160;
+    private static final Character[] CHAR_SET = {' ', '.', ':', '-', '=', '+', '*', '#', '%', '@'};
+    // the brightness of the flat image, between two levels of the char set
+    private static final float FLAT_SHARE = 0.3f;
+    private static final CharBrightnessTable TABLE = new CharBrightnessTable(FONT);
+
+    @Test
+    void noBrightnessMatchingDitheringIsTheDefault() {
+        assertNoDitheringAsDefault(img -> new BrightnessImgCharMatcher(img, TABLE));
+    }
+
+    @Test
+    void noShapeMatchingDitheringIsTheDefault() {
+        assertNoDitheringAsDefault(img -> new ShapeImgCharMatcher(img, TABLE));
+    }
+
+    @Test
+    void diffusionMixesTheClosestChars() {
+        assertFlatImageMixed(Dithering.DIFFUSION);
+    }
+
+    @Test
+    void orderedDitheringMixesTheClosestChars() {
+        assertFlatImageMixed(Dithering.ORDERED);
+    }
+
+    // Match with dithering, then turn it off again, and compare with a matcher never dithered
+    private static void assertNoDitheringAsDefault(Function<Image, CellGridMatcher<?>> matcherOf) {
+        Image img = new RingsImage(640, 480);
+        char[][] undithered = matcherOf.apply(img).chooseChars(WIDTH, CHAR_SET);
+        CellGridMatcher<?> matcher = matcherOf.apply(img);
+        matcher.setDithering(Dithering.DIFFUSION);
+        matcher.chooseChars(WIDTH, CHAR_SET);
+        matcher.setDithering(Dithering.NONE);
+        assertArrayEquals(undithered, matcher.chooseChars(WIDTH, CHAR_SET));
+    }
+
+    // Dither an image whose brightness is FLAT_SHARE of the way between two levels of the char set:
+    // only the chars of these levels may be chosen, both must be, and they must average to the image
+    private static void assertFlatImageMixed(Dithering dithering) {
+        CompiledCharSet charSet = new CompiledCharSet(TABLE, CHAR_SET);
+        char darker = '@', brighter = ' ';
+        for (Character ch : CHAR_SET) {
+            if (charSet.brightnessOf(ch) <= 0.5f && charSet.brightnessOf(darker) < charSet.brightnessOf(ch)) {
+                darker = ch;
+            }
+        }
+        for (Character ch : CHAR_SET) {
+            if (charSet.brightnessOf(darker) < charSet.brightnessOf(ch) &&
+                    charSet.brightnessOf(ch) < charSet.brightnessOf(brighter)) {
+                brighter = ch;
+            }
+        }
+        float gap = charSet.brightnessOf(brighter) - charSet.brightnessOf(darker);
+        int grey = Math.round((charSet.brightnessOf(darker) + FLAT_SHARE * gap) * 255);
+        Image img = new FlatImage(640, 480, grey);
+        float brightness = new BrightnessPyramid(img).cellsOf(1, 1, 640, 480)[0];
+
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(img, TABLE);
+        matcher.setDithering(dithering);
+        int darkerCount = 0, brighterCount = 0;
+        for (char[] row : matcher.chooseChars(WIDTH, CHAR_SET)) {
+            for (char ch : row) {
+                assertTrue(ch == darker || ch == brighter, "'" + ch + "' is not one of the closest chars");
+                if (ch == darker) {
+                    darkerCount++;
+                } else {
+                    brighterCount++;
+                }
+            }
+        }
+        assertTrue(0 < darkerCount && 0 < brighterCount);
+        float mean = (darkerCount * charSet.brightnessOf(darker) + brighterCount * charSet.brightnessOf(brighter)) /
+                (darkerCount + brighterCount);
+        assertEquals(brightness, mean, gap / 16);
+    }
+
+    // Opaque grey pixels all of the same level
+    private static final class FlatImage implements Image {
+        private final int width, height;
+        private final int rgb;
+
+        FlatImage(int width, int height, int grey) {
+            this.width = width;
+            this.height = height;
+            this.rgb = 0xFF000000 | grey << 16 | grey << 8 | grey;
+        }
+
+        @Override
+        public Color getPixel(int x, int y) {
+            return new Color(this.rgb, true);
+        }
+
+        @Override
+        public int getRgb(int x, int y) {
+            return this.rgb;
+        }
+
+        @Override
+        public int getWidth() {
+            return this.width;
+        }
+
+        @Override
+        public int getHeight() {
+            return this.height;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ascii_art.img_to_char;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * VectorGreyLevels against the scalar loop, on runs that start and end off the vector lanes
+ */
+class GreyLevelsTest {
+    private static final int PIXELS = 100;
+    private static final double SUM_TOLERANCE = 1e-12;
+
+    private final GreyLevels vector = new VectorGreyLevels();
+    private final GreyLevels scalar = new GreyLevels.Scalar();
+
+    @Test
+    void greyLevelsAreTheScalarOnes() {
+        int[] rgb = randomPixels(1);
+        for (int from = 0; from < 4; from++) {
+            for (int to = from; to <= PIXELS; to++) {
+                double[] expected = new double[PIXELS];
+                double[] actual = new double[PIXELS];
+                scalar.greyLevelsOf(rgb, from, to, expected);
+                vector.greyLevelsOf(rgb, from, to, actual);
+                for (int i = 0; i < PIXELS; i++) {
+                    assertEquals(expected[i], actual[i], "pixel " + i + " of run " + from + ".." + to);
+                }
+            }
+        }
+    }
+
+    @Test
+    void sumsAreTheScalarOnes() {
+        int[] rgb = randomPixels(2);
+        for (int from = 0; from < 4; from++) {
+            for (int to = from; to <= PIXELS; to++) {
+                double expected = scalar.sumOf(rgb, from, to);
+                assertEquals(expected, vector.sumOf(rgb, from, to),
+                        SUM_TOLERANCE * Math.max(1, expected), "run " + from + ".." + to);
+            }
+        }
+    }
+
+    @Test
+    void extremePixels() {
+        int[] rgb = {0, 0xffffffff, 0xff000000, 0x00ffffff, 0xffff0000, 0xff00ff00, 0xff0000ff, 0x7f7f7f7f};
+        double[] expected = new double[rgb.length];
+        double[] actual = new double[rgb.length];
+        scalar.greyLevelsOf(rgb, 0, rgb.length, expected);
+        vector.greyLevelsOf(rgb, 0, rgb.length, actual);
+        for (int i = 0; i < rgb.length; i++) {
+            assertEquals(expected[i], actual[i], "pixel " + Integer.toHexString(rgb[i]));
+        }
+    }
+
+    // Random opaque and translucent pixels
+    private static int[] randomPixels(long seed) {
+        Random random = new Random(seed);
+        int[] rgb = new int[PIXELS];
+        for (int i = 0; i < PIXELS; i++) {
+            rgb[i] = random.nextInt();
+        }
+        return rgb;
+    }
+}
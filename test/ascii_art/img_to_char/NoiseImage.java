@@ -0,0 +1,40 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+import java.awt.*;
+
+/**
+ * Opaque pixels of a hash of their coordinates, computed instead of kept, so that big images cost
+ * no memory
+ */
+final class NoiseImage implements Image {
+    private final int width, height;
+
+    NoiseImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getRgb(x, y), true);
+    }
+
+    @Override
+    public int getRgb(int x, int y) {
+        int hash = x * 0x9E3779B1 ^ y * 0x85EBCA77;
+        hash ^= hash >>> 15;
+        return 0xFF000000 | hash * 0x2C1B3C6D >>> 8;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+}
@@ -0,0 +1,52 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Ascii art matched by several workers against the same ascii art matched on the calling thread
+ */
+class ParallelMatchingTest {
+    private static final String FONT = "Monospaced";
+    private static final int WORKERS = 8;
+    // fractions of pixels per cell, shapes read from parts, and cells too small for a shape
+    private static final int[] WIDTHS = {37, 64, 99, 160, 253, 500};
+    private static final Character[] CHAR_SET = {' ', '.', ':', '-', '=', '+', '*', '#', '%', '@', '/', '\\',
+            '|', '(', ')', 'o', 'O', 'M'};
+    private static final Image IMAGE = new RingsImage(1000, 750);
+    private static final CharBrightnessTable TABLE = new CharBrightnessTable(FONT);
+
+    @Test
+    void brightnessMatchingIsTheSame() {
+        assertParallelAsSerial(img -> new BrightnessImgCharMatcher(img, TABLE));
+    }
+
+    @Test
+    void shapeMatchingIsTheSame() {
+        assertParallelAsSerial(img -> new ShapeImgCharMatcher(img, TABLE));
+    }
+
+    // Match every width with every dithering by a matcher of one worker and by one of many
+    private static void assertParallelAsSerial(Function<Image, CellGridMatcher<?>> matcherOf) {
+        CellGridMatcher<?> serial = matcherOf.apply(IMAGE);
+        CellGridMatcher<?> parallel = matcherOf.apply(IMAGE);
+        serial.setWorkers(1);
+        parallel.setWorkers(WORKERS);
+        try {
+            for (Dithering dithering : Dithering.values()) {
+                serial.setDithering(dithering);
+                parallel.setDithering(dithering);
+                for (int width : WIDTHS) {
+                    assertArrayEquals(serial.chooseChars(width, CHAR_SET, 2),
+                            parallel.chooseChars(width, CHAR_SET, 2), dithering + " at width " + width);
+                }
+            }
+        } finally {
+            parallel.setWorkers(1);
+        }
+    }
+}
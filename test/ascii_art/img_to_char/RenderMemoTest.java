@@ -0,0 +1,111 @@
+package ascii_art.img_to_char;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Grids and char sets kept by RenderMemo: hits and misses, least recently used grids evicted past
+ * the chars it keeps, and the number of char sets it keeps
+ */
+class RenderMemoTest {
+    // as RenderMemo keeps
+    private static final long MAX_GRID_CHARS = 1L << 22;
+    private static final int MAX_CHAR_SETS = 64;
+    // a quarter of MAX_GRID_CHARS
+    private static final int ROWS = 1024, COLS = 1024;
+    private static final String CHAR_SET = " .:#@";
+
+    @Test
+    void sameArgumentsAreAHit() {
+        RenderMemo<Object> memo = new RenderMemo<>();
+        char[][] grid = gridOf(ROWS);
+        assertNull(memo.gridOf(COLS, 2, CHAR_SET, Dithering.NONE));
+        memo.putGrid(COLS, 2, CHAR_SET, Dithering.NONE, grid);
+        assertSame(grid, memo.gridOf(COLS, 2, CHAR_SET, Dithering.NONE));
+        assertNull(memo.gridOf(COLS, 1, CHAR_SET, Dithering.NONE));
+        assertNull(memo.gridOf(COLS, 2, CHAR_SET, Dithering.ORDERED));
+        assertNull(memo.gridOf(COLS, 2, " .:#", Dithering.NONE));
+        assertNull(memo.gridOf(COLS / 2, 2, CHAR_SET, Dithering.NONE));
+        assertEquals(1, memo.hits());
+        assertEquals(5, memo.misses());
+        assertEquals((long) ROWS * COLS, memo.gridChars());
+    }
+
+    @Test
+    void charSetOrderDoesNotMatter() {
+        assertEquals(RenderMemo.canonicalOf(new Character[]{'#', ' ', '.', '#', '@', ':'}),
+                RenderMemo.canonicalOf(new Character[]{' ', '.', ':', '#', '@'}));
+    }
+
+    @Test
+    void leastRecentlyUsedGridIsEvicted() {
+        RenderMemo<Object> memo = new RenderMemo<>();
+        char[][][] grids = new char[5][][];
+        for (int i = 0; i < 4; i++) {
+            grids[i] = gridOf(ROWS);
+            memo.putGrid(COLS, i, CHAR_SET, Dithering.NONE, grids[i]);
+        }
+        assertEquals(MAX_GRID_CHARS, memo.gridChars());
+        assertSame(grids[0], memo.gridOf(COLS, 0, CHAR_SET, Dithering.NONE));
+        grids[4] = gridOf(ROWS);
+        memo.putGrid(COLS, 4, CHAR_SET, Dithering.NONE, grids[4]);
+        assertEquals(MAX_GRID_CHARS, memo.gridChars());
+        assertNull(memo.gridOf(COLS, 1, CHAR_SET, Dithering.NONE));
+        for (int i : new int[]{0, 2, 3, 4}) {
+            assertSame(grids[i], memo.gridOf(COLS, i, CHAR_SET, Dithering.NONE));
+        }
+    }
+
+    @Test
+    void gridTooBigIsNotKept() {
+        RenderMemo<Object> memo = new RenderMemo<>();
+        memo.putGrid(COLS, 1, CHAR_SET, Dithering.NONE, gridOf(ROWS));
+        memo.putGrid(COLS, 2, CHAR_SET, Dithering.NONE, gridOf((int) (MAX_GRID_CHARS / COLS) + 1));
+        assertNull(memo.gridOf(COLS, 2, CHAR_SET, Dithering.NONE));
+        assertNotNull(memo.gridOf(COLS, 1, CHAR_SET, Dithering.NONE));
+        assertEquals((long) ROWS * COLS, memo.gridChars());
+    }
+
+    @Test
+    void charSetsAreCompiledOnce() {
+        RenderMemo<Object> memo = new RenderMemo<>();
+        Object compiled = memo.charSetOf(CHAR_SET, Object::new);
+        assertSame(compiled, memo.charSetOf(CHAR_SET, () -> fail("compiled again")));
+    }
+
+    @Test
+    void charSetsBeyondTheLimitAreDropped() {
+        RenderMemo<Object> memo = new RenderMemo<>();
+        AtomicInteger compiled = new AtomicInteger();
+        for (int i = 0; i < MAX_CHAR_SETS; i++) {
+            memo.charSetOf(charSetOf(i), () -> compiled.incrementAndGet());
+        }
+        for (int i = 0; i < MAX_CHAR_SETS; i++) {
+            memo.charSetOf(charSetOf(i), () -> fail("a kept char set compiled again"));
+        }
+        Object last = memo.charSetOf(charSetOf(MAX_CHAR_SETS), Object::new);
+        assertSame(last, memo.charSetOf(charSetOf(MAX_CHAR_SETS), () -> fail("the last char set compiled again")));
+        for (int i = 0; i < MAX_CHAR_SETS; i++) {
+            memo.charSetOf(charSetOf(i), () -> compiled.incrementAndGet());
+        }
+        assertTrue(MAX_CHAR_SETS < compiled.get());
+    }
+
+    // A grid of the given number of rows, whose chars are counted but never read
+    private static char[][] gridOf(int rows) {
+        return new char[rows][];
+    }
+
+    // A distinct canonical char set for every index
+    private static String charSetOf(int index) {
+        return CHAR_SET + (char) ('a' + index % 26) + (char) ('A' + index / 26);
+    }
+}
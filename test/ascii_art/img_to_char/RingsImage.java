@@ -0,0 +1,48 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+import java.awt.*;
+
+/**
+ * Grey rings around the center of the image, fading out to the corners, with some noise on top -
+ * edges and gradients for the matchers to follow, computed instead of kept
+ */
+final class RingsImage implements Image {
+    private static final double RING_WIDTH = 40;
+    private static final int NOISE = 24;
+
+    private final int width, height;
+
+    RingsImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getRgb(x, y), true);
+    }
+
+    @Override
+    public int getRgb(int x, int y) {
+        double radius = Math.hypot(x - this.width / 2.0, y - this.height / 2.0);
+        double fade = 1 - radius / Math.hypot(this.width / 2.0, this.height / 2.0);
+        int hash = x * 0x9E3779B1 ^ y * 0x85EBCA77;
+        hash ^= hash >>> 15;
+        int grey = (int) (127.5 + 100 * fade * Math.sin(radius * Math.PI / RING_WIDTH))
+                + (hash * 0x2C1B3C6D >>> 24) % NOISE - NOISE / 2;
+        grey = Math.max(0, Math.min(255, grey));
+        return 0xFF000000 | grey << 16 | grey << 8 | grey;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+}
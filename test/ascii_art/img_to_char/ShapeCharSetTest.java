@@ -0,0 +1,112 @@
+package ascii_art.img_to_char;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Chars chosen by shape for cells with an edge, and the pruned search against trying every char
+ */
+class ShapeCharSetTest {
+    private static final String FONT = "Monospaced";
+    private static final int PARTS = ShapeCharSet.PARTS, SHAPE_RESOLUTION = ShapeCharSet.SHAPE_RESOLUTION;
+    private static final float STRUCTURE_WEIGHT = 0.5f;
+    private static final double TOLERANCE = 1e-4;
+    private static final int CELLS = 2000;
+    // how much darker and brighter than their mean the halves of an edge cell are
+    private static final float EDGE = 0.2f;
+    private static final CharBrightnessTable TABLE = new CharBrightnessTable(FONT);
+
+    @Test
+    void edgeOnTheLeftIsALeftBracket() {
+        // mirrored brackets are as bright, and ties would go to '[' anyway
+        assertEquals('[', edgeCellChar(true));
+    }
+
+    @Test
+    void edgeOnTheRightIsARightBracket() {
+        assertEquals(']', edgeCellChar(false));
+    }
+
+    @Test
+    void prunedSearchOfAllCharsIsExhaustive() {
+        Character[] charSet = new Character[CharBrightnessTable.LAST_CHAR - CharBrightnessTable.FIRST_CHAR + 1];
+        for (char ch = CharBrightnessTable.FIRST_CHAR; ch <= CharBrightnessTable.LAST_CHAR; ch++) {
+            charSet[ch - CharBrightnessTable.FIRST_CHAR] = ch;
+        }
+        assertPrunedAsExhaustive(charSet);
+    }
+
+    @Test
+    void prunedSearchOfFewCharsIsExhaustive() {
+        assertPrunedAsExhaustive(new Character[]{' ', '.', '-', '|', '/', '\\', '_', 'o', '#', '@'});
+    }
+
+    // The char of a cell dark on one half and bright on the other, as bright as the brackets on average
+    private static char edgeCellChar(boolean darkOnTheLeft) {
+        ShapeCharSet charSet = new ShapeCharSet(TABLE, new Character[]{' ', '#', '[', ']'});
+        float mean = charSet.brightnessOf('[');
+        float[] cellParts = new float[PARTS];
+        for (int part = 0; part < PARTS; part++) {
+            boolean left = part % SHAPE_RESOLUTION < SHAPE_RESOLUTION / 2;
+            cellParts[part] = left == darkOnTheLeft ? mean - EDGE : mean + EDGE;
+        }
+        return charSet.closestCharTo(cellParts, new float[PARTS]);
+    }
+
+    // Random cells - noise, flat cells and edges - matched by the pruned search must be as close to
+    // their char as to the closest of all the chars
+    private static void assertPrunedAsExhaustive(Character[] chars) {
+        ShapeCharSet charSet = new ShapeCharSet(TABLE, chars);
+        Random random = new Random(CELLS);
+        float[] cellParts = new float[PARTS];
+        for (int cell = 0; cell < CELLS; cell++) {
+            float base = random.nextFloat(), spread = random.nextFloat();
+            for (int part = 0; part < PARTS; part++) {
+                switch (cell % 3) {
+                    case 0 -> cellParts[part] = random.nextFloat();
+                    case 1 -> cellParts[part] = base;
+                    default -> cellParts[part] = part % SHAPE_RESOLUTION < cell % SHAPE_RESOLUTION ?
+                            base * spread : base;
+                }
+            }
+            double closest = Double.POSITIVE_INFINITY;
+            for (char ch : chars) {
+                closest = Math.min(closest, distanceOf(charSet, ch, cellParts));
+            }
+            char chosen = charSet.closestCharTo(cellParts, new float[PARTS]);
+            assertEquals(closest, distanceOf(charSet, chosen, cellParts), TOLERANCE, "cell " + cell);
+        }
+    }
+
+    // The distance of a cell to a char as ShapeCharSet tells it: PARTS times the difference of their
+    // brightness, plus STRUCTURE_WEIGHT times the differences of their parts less their own means
+    private static double distanceOf(ShapeCharSet charSet, char ch, float[] cellParts) {
+        double[] charParts = partsOf(TABLE.brightnessMapOf(ch));
+        double cellMean = 0, charMean = 0;
+        for (int part = 0; part < PARTS; part++) {
+            cellMean += cellParts[part] / (double) PARTS;
+            charMean += charParts[part] / PARTS;
+        }
+        double shapeDistance = 0;
+        for (int part = 0; part < PARTS; part++) {
+            shapeDistance += Math.abs((charParts[part] - charMean) - (cellParts[part] - cellMean));
+        }
+        return PARTS * Math.abs(cellMean - charSet.brightnessOf(ch)) + STRUCTURE_WEIGHT * shapeDistance;
+    }
+
+    // Mean brightness of the pixels of every part of a char, row after row
+    private static double[] partsOf(float[] brightnessMap) {
+        int pixels = BrightnessImgCharMatcher.CHAR_RESOLUTION, partPixels = pixels / SHAPE_RESOLUTION;
+        double[] parts = new double[PARTS];
+        for (int y = 0; y < pixels; y++) {
+            for (int x = 0; x < pixels; x++) {
+                parts[(y / partPixels) * SHAPE_RESOLUTION + x / partPixels] +=
+                        brightnessMap[y * pixels + x] / (double) (partPixels * partPixels);
+            }
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,85 @@
+package ascii_output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Text written through ChannelTextWriter read back, and ascii art written row by row by the console
+ * and html outputs against the text the rows make
+ */
+class AsciiOutputTest {
+    private static final String FONT = "Courier New";
+    // html special chars and a char of more than one byte
+    private static final char[][] ROWS = {
+            "  .:-=+*#%@".toCharArray(),
+            "<a & b>    ".toCharArray(),
+            "éé ..  ## @".toCharArray()};
+    // more than the buffer of ChannelTextWriter, so it is written in several parts
+    private static final int LONG_TEXT_CHARS = 200_000;
+
+    @Test
+    void longTextIsWrittenWhole() throws IOException {
+        StringBuilder text = new StringBuilder(LONG_TEXT_CHARS);
+        for (int i = 0; i < LONG_TEXT_CHARS; i++) {
+            // two byte chars now and then, so some of them straddle the end of the buffer
+            text.append(i % 7 == 0 ? 'é' : (char) ('a' + i % 26));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ChannelTextWriter writer = new ChannelTextWriter(Channels.newChannel(bytes))) {
+            writer.write(text);
+        }
+        assertEquals(text.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void consoleRowsAreLines() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ConsoleAsciiOutput(new PrintStream(bytes, true, StandardCharsets.UTF_8)).output(ROWS);
+        assertEquals(textOf(ROWS, false), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void consoleRowsWrittenOneByOne() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConsoleAsciiOutput output = new ConsoleAsciiOutput(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        output.begin();
+        char[] row = new char[ROWS[0].length];
+        for (char[] nextRow : ROWS) {
+            // rows may be changed once written
+            System.arraycopy(nextRow, 0, row, 0, row.length);
+            output.writeRow(row);
+        }
+        output.end();
+        assertEquals(textOf(ROWS, false), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void htmlRowsAreEscapedLines(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("out.html");
+        new HtmlAsciiOutput(file.toString(), FONT).output(ROWS);
+        assertEquals(HtmlPage.start(FONT) + textOf(ROWS, true) + HtmlPage.END, Files.readString(file));
+    }
+
+    // The rows a line each, escaped for html if asked to
+    static String textOf(char[][] rows, boolean html) {
+        StringBuilder text = new StringBuilder();
+        for (char[] row : rows) {
+            String line = new String(row);
+            if (html) {
+                line = line.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+            }
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+}
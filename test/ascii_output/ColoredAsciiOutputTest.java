@@ -0,0 +1,89 @@
+package ascii_output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Colored ascii art against the same ascii art written without colors, and a color set once for
+ * every run of chars of the same color
+ */
+class ColoredAsciiOutputTest {
+    private static final String FONT = "Courier New";
+    private static final char[][] ROWS = {
+            "  .:-=+*#%@".toCharArray(),
+            "<a & b>    ".toCharArray(),
+            "éé ..  ## @".toCharArray()};
+    private static final int RED = 0xFF0000, GREEN = 0x00FF00, BLUE = 0x0000FF;
+    // the bits above RGB are not part of the color; the first run goes on over the end of the first row
+    private static final int[][] COLORS = {
+            {RED, RED, RED, RED, GREEN, GREEN, GREEN, BLUE, BLUE, RED, RED},
+            {0xFF000000 | RED, RED, RED, BLUE, BLUE, BLUE, BLUE, BLUE, BLUE, BLUE, BLUE},
+            {BLUE, GREEN, RED, GREEN, GREEN, GREEN, GREEN, GREEN, GREEN, GREEN, GREEN}};
+    private static final int RUNS = 8;
+    private static final Pattern ANSI_COLOR = Pattern.compile("\033\\[38;2;(\\d+);(\\d+);(\\d+)m");
+    private static final Pattern HTML_SPAN = Pattern.compile("<span style=\"color:#([0-9a-f]{6})\">|</span>");
+
+    @Test
+    void ansiWithoutColorsIsTheConsoleOutput() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new AnsiColorAsciiOutput(new PrintStream(bytes, true, StandardCharsets.UTF_8)).output(ROWS, COLORS);
+        String text = bytes.toString(StandardCharsets.UTF_8);
+        assertTrue(text.endsWith("\033[0m"));
+        String uncolored = text.substring(0, text.length() - "\033[0m".length());
+        assertEquals(AsciiOutputTest.textOf(ROWS, false), ANSI_COLOR.matcher(uncolored).replaceAll(""));
+
+        Matcher colors = ANSI_COLOR.matcher(uncolored);
+        int runs = 0;
+        while (colors.find()) {
+            int rgb = Integer.parseInt(colors.group(1)) << 16 | Integer.parseInt(colors.group(2)) << 8 |
+                    Integer.parseInt(colors.group(3));
+            assertEquals(colorAt(uncolored.substring(0, colors.start()), ANSI_COLOR), rgb);
+            runs++;
+        }
+        assertEquals(RUNS, runs);
+    }
+
+    @Test
+    void htmlWithoutSpansIsTheHtmlOutput(@TempDir Path dir) throws IOException {
+        Path plain = dir.resolve("plain.html"), colored = dir.resolve("colored.html");
+        new HtmlAsciiOutput(plain.toString(), FONT).output(ROWS);
+        new HtmlColorAsciiOutput(colored.toString(), FONT).output(ROWS, COLORS);
+        String text = Files.readString(colored);
+        assertEquals(Files.readString(plain), HTML_SPAN.matcher(text).replaceAll(""));
+
+        Matcher spans = HTML_SPAN.matcher(text);
+        int runs = 0;
+        while (spans.find()) {
+            if (spans.group(1) != null) {
+                assertEquals(colorAt(text.substring(0, spans.start()), HTML_SPAN), Integer.parseInt(spans.group(1), 16));
+                runs++;
+            }
+        }
+        assertEquals(RUNS, runs);
+        assertTrue(text.endsWith("</span>" + HtmlPage.END));
+    }
+
+    // The color of the char that follows a text written by an output, found by counting the chars
+    // of the text once the colors and html are taken out of it
+    private static int colorAt(String text, Pattern colorPattern) {
+        String chars = colorPattern.matcher(text).replaceAll("");
+        if (colorPattern == HTML_SPAN) {
+            chars = chars.substring(HtmlPage.start(FONT).length())
+                    .replace("&amp;", "&").replace("&lt;", "<").replace("&gt;", ">");
+        }
+        int index = chars.replace("\n", "").length();
+        return COLORS[index / ROWS[0].length][index % ROWS[0].length] & 0xFFFFFF;
+    }
+}